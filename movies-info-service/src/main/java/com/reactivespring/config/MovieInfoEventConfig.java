@@ -0,0 +1,17 @@
+package com.reactivespring.config;
+
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+public class MovieInfoEventConfig {
+
+    @Bean
+    public MovieInfoEventProperties movieInfoEventProperties(Environment environment) {
+        return Binder.get(environment)
+                .bind("movieinfo.events", MovieInfoEventProperties.class)
+                .orElseGet(MovieInfoEventProperties::new);
+    }
+}
@@ -0,0 +1,62 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Movie info event settings, bound from movieinfo.events.
+ */
+@Data
+public class MovieInfoEventProperties {
+
+    public static final String LOCAL_SOURCE = "local";
+
+    public enum OverflowStrategy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        // ends the stream of the subscriber with an error
+        DISCONNECT
+    }
+
+    // local | change-stream
+    private String source = LOCAL_SOURCE;
+    private Buffer buffer = new Buffer();
+    private Subscriber subscriber = new Subscriber();
+    private ChangeStream changeStream = new ChangeStream();
+
+    /**
+     * Replay buffer shared by all the subscribers.
+     */
+    @Data
+    public static class Buffer {
+
+        private int maxEvents = 1000;
+        private Duration maxAge = Duration.ofMinutes(10);
+        private DataSize maxBytes = DataSize.ofMegabytes(10);
+    }
+
+    /**
+     * Queue of each subscriber and slow consumer detection.
+     */
+    @Data
+    public static class Subscriber {
+
+        private int queueSize = 256;
+        private OverflowStrategy overflowStrategy = OverflowStrategy.DROP_OLDEST;
+        // events published but not yet delivered, beyond this the subscriber is evicted
+        private long maxLag = 1000;
+        // time without any delivery while lagging, beyond this the subscriber is evicted
+        private Duration maxStall = Duration.ofSeconds(30);
+        private Duration checkInterval = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class ChangeStream {
+
+        // unique per instance, each listener saves its own resume token; movies-info-service@<host name> when unset
+        private String listenerId;
+        private Duration resumeTokenSaveInterval = Duration.ofSeconds(1);
+    }
+}
@@ -0,0 +1,69 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jackson encoder writing a Flux as a JSON array element by element, instead of collecting it into a List first.
+ * Memory stays bounded by the elements in flight and the first element is written as soon as it is available,
+ * the writes being driven by the demand of the connection.
+ * Once the opening bracket is written the status is committed, so an error in the middle of the Flux aborts the
+ * response instead of turning it into an error status.
+ * Monos, streaming media types (NDJSON, ...) and non UTF-8 charsets are encoded as before.
+ */
+public class StreamingJsonArrayEncoder extends Jackson2JsonEncoder {
+
+    private static final byte[] START_ARRAY = "[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = ",".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END_ARRAY = "]".getBytes(StandardCharsets.UTF_8);
+
+    public StreamingJsonArrayEncoder(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, @Nullable MimeType mimeType,
+                                   @Nullable Map<String, Object> hints) {
+        if (inputStream instanceof Mono || isStreamingMediaType(mimeType) || !isUtf8(mimeType)) {
+            return super.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+
+        var elements = Flux.from(inputStream)
+                .map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints))
+                .index()
+                .concatMapIterable(indexed -> indexed.getT1() == 0
+                        ? List.of(indexed.getT2())
+                        : List.of(bufferFactory.wrap(SEPARATOR), indexed.getT2()));
+
+        return Flux.concat(
+                        Mono.fromCallable(() -> bufferFactory.wrap(START_ARRAY)),
+                        elements,
+                        Mono.fromCallable(() -> bufferFactory.wrap(END_ARRAY)))
+                .doOnDiscard(PooledDataBuffer.class, DataBufferUtils::release);
+    }
+
+    private boolean isStreamingMediaType(@Nullable MimeType mimeType) {
+        return mimeType != null && getStreamingMediaTypes().stream()
+                .anyMatch(streamingMediaType -> streamingMediaType.isCompatibleWith(mimeType));
+    }
+
+    private static boolean isUtf8(@Nullable MimeType mimeType) {
+        return mimeType == null || mimeType.getCharset() == null
+                || StandardCharsets.UTF_8.equals(mimeType.getCharset());
+    }
+}
@@ -0,0 +1,22 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+@Configuration
+public class WebFluxConfig implements WebFluxConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    public WebFluxConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        // the movie info lists of GET /v1/movieinfos are written as they are read from MongoDB
+        configurer.defaultCodecs().jackson2JsonEncoder(new StreamingJsonArrayEncoder(objectMapper));
+    }
+}
@@ -1,30 +1,44 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.SequencedMovieInfo;
+import com.reactivespring.exception.SlowConsumerException;
+import com.reactivespring.service.MovieInfoEventService;
 import com.reactivespring.service.MovieInfoService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.print.attribute.standard.Media;
 import javax.validation.Valid;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/v1")
 @Slf4j
 public class MoviesInfoController {
 
-    private MovieInfoService movieInfoService;
+    static final int MAX_PAGE_SIZE = 1000;
 
-    Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().all();
+    private MovieInfoService movieInfoService;
+    private MovieInfoEventService movieInfoEventService;
 
-    public MoviesInfoController(MovieInfoService movieInfoService) {
+    public MoviesInfoController(MovieInfoService movieInfoService, MovieInfoEventService movieInfoEventService) {
         this.movieInfoService = movieInfoService;
+        this.movieInfoEventService = movieInfoEventService;
     }
 
     /*@GetMapping("/movieinfos")
@@ -48,23 +62,111 @@ public class MoviesInfoController {
         return movieInfoService.getAllMovieInfos().log();
     }
 
+    /**
+     * Sparse fieldset, ?fields=name,year returns the ids, names and years only.
+     * The pages are not projected, fields does not combine with limit and after.
+     */
+    @GetMapping(value = "/movieinfos", params = {"fields", "!limit"})
+    public Flux<Map<String, Object>> getAllMovieInfoFields(@RequestParam("fields") List<String> fields,
+                                                           @RequestParam(value = "year", required = false) Integer year,
+                                                           @RequestParam(value = "name", required = false) String name,
+                                                           @RequestParam(value = "after", required = false) String after) {
+        if (after != null) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "fields does not apply to the pages, after requires limit"));
+        }
+        return movieInfoService.getMovieInfoFields(year, name, fields).log();
+    }
+
+    /**
+     * Keyset pagination, enabled by the limit parameter.
+     * The Link header points to the next page, it is absent on the last page.
+     */
+    @GetMapping(value = "/movieinfos", params = "limit")
+    public Mono<ResponseEntity<List<MovieInfo>>> getMovieInfoPage(@RequestParam("limit") int limit,
+                                                                  @RequestParam(value = "after", required = false) String after,
+                                                                  @RequestParam(value = "year", required = false) Integer year,
+                                                                  @RequestParam(value = "fields", required = false) List<String> fields,
+                                                                  ServerHttpRequest request) {
+        if (fields != null) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "fields does not apply to the pages"));
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        return Mono.defer(() -> movieInfoService.getMovieInfoPage(year, after, limit))
+                .map(page -> {
+                    var response = ResponseEntity.ok();
+                    if (page.getNext() != null) {
+                        var nextUri = UriComponentsBuilder.fromHttpRequest(request)
+                                .replaceQueryParam("after", page.getNext())
+                                .build()
+                                .toUriString();
+                        response.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"");
+                    }
+                    return response.body(page.getMovieInfos());
+                })
+                .log();
+    }
+
     /*@GetMapping("/movieinfos/{id}")
     @ResponseStatus(HttpStatus.OK)
     public Mono<MovieInfo> getMovieInfoById(@PathVariable String id) {
         return movieInfoService.getMovieInfoById(id).log();
     }*/
 
+    /**
+     * The version of the movie info is its strong ETag, a matching If-None-Match is answered with 304 and no body.
+     */
     @GetMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> getMovieInfoById(@PathVariable String id) {
         return movieInfoService.getMovieInfoById(id)
+                .map(movieInfo -> withETag(ResponseEntity.ok(), movieInfo).body(movieInfo))
+                .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
+                .log();
+    }
+
+    @GetMapping(value = "/movieinfos/{id}", params = "fields")
+    public Mono<ResponseEntity<Map<String, Object>>> getMovieInfoFieldsById(@PathVariable String id,
+                                                                         @RequestParam("fields") List<String> fields) {
+        return movieInfoService.getMovieInfoFieldsById(id, fields)
                 .map(ResponseEntity.ok()::body)
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
                 .log();
     }
 
+    /**
+     * The saved and deleted movie infos, each carrying the type and the sequence of its event, so a reconnecting
+     * client resumes with after. A delete only carries the id of the movie info.
+     */
     @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
-    public Flux<MovieInfo> getSavedMovieInfo() {
-        return moviesInfoSink.asFlux().log();
+    public Flux<SequencedMovieInfo> getSavedMovieInfo(@RequestParam(value = "after", required = false) Long after) {
+        return movieInfoEventService.events(after)
+                .map(SequencedMovieInfo::new)
+                .log();
+    }
+
+    /**
+     * Same events as /movieinfos/stream, as server sent events named after their type and carrying
+     * their sequence as id, so a reconnecting client resumes from its Last-Event-ID.
+     * A subscriber evicted for being too slow gets a final error event.
+     */
+    @GetMapping(value = "/movieinfos/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<MovieInfo>> getMovieInfoEvents(
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return movieInfoEventService.events(lastEventId != null ? lastEventId : after)
+                .map(event -> ServerSentEvent.builder(event.getMovieInfo())
+                        .id(String.valueOf(event.getSequence()))
+                        .event(event.getType().name())
+                        .build())
+                .onErrorResume(SlowConsumerException.class, ex -> Mono.just(ServerSentEvent.<MovieInfo>builder()
+                        .event("error")
+                        .comment(ex.getMessage())
+                        .build()))
+                .log();
     }
 
     /*@PostMapping("/movieinfos")
@@ -83,20 +185,43 @@ public class MoviesInfoController {
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo) {
         return movieInfoService.addMovieInfo(movieInfo)
-                .doOnNext(savedInfo -> moviesInfoSink.tryEmitNext(savedInfo))
+                .doOnNext(savedInfo -> movieInfoEventService.onMovieInfoSaved(savedInfo))
                 .log();
     }
 
+    /**
+     * Inserts the NDJSON movie infos of the body in batches and streams back one result per record.
+     * The body is read as the inserts are acknowledged, so it is never held in memory as a whole.
+     */
+    @PostMapping(value = "/movieinfos/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoBulkResult> bulkInsertMovieInfos(@RequestBody Flux<MovieInfo> movieInfos,
+                                                          @RequestParam(value = "ordered", defaultValue = "true") boolean ordered) {
+        return movieInfoService.bulkInsertMovieInfos(movieInfos, ordered)
+                .doOnNext(result -> {
+                    if (result.getStatus() == MovieInfoBulkResult.Status.INSERTED) {
+                        movieInfoEventService.onMovieInfoSaved(result.getMovieInfo());
+                    }
+                });
+    }
+
     /*@PutMapping("/movieinfos/{id}")
     @ResponseStatus(HttpStatus.OK)
     public Mono<MovieInfo> updateMovieInfo(@RequestBody MovieInfo updatedMovirInfo, @PathVariable String id) {
         return movieInfoService.updateMovieInfo(updatedMovirInfo, id).log();
     }*/
 
+    /**
+     * With If-Match, the update only applies when the ETag of the movie info still matches, otherwise 412.
+     */
     @PutMapping("/movieinfos/{id}")
-    public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@RequestBody MovieInfo updatedMovirInfo, @PathVariable String id) {
-        return movieInfoService.updateMovieInfo(updatedMovirInfo, id)
-                .map(ResponseEntity.ok()::body)
+    public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@RequestBody MovieInfo updatedMovirInfo, @PathVariable String id,
+                                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        var updatedMovieInfo = ifMatch == null || ifMatch.trim().equals("*")
+                ? movieInfoService.updateMovieInfo(updatedMovirInfo, id)
+                : movieInfoService.updateMovieInfo(updatedMovirInfo, id, parseVersions(ifMatch));
+        return updatedMovieInfo
+                .map(movieInfo -> withETag(ResponseEntity.ok(), movieInfo).body(movieInfo))
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()))
                 .log();
     }
@@ -107,5 +232,27 @@ public class MoviesInfoController {
         return movieInfoService.deleteMovieInfo(id).log();
     }
 
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, MovieInfo movieInfo) {
+        return movieInfo.getVersion() != null ? response.eTag(String.valueOf(movieInfo.getVersion())) : response;
+    }
+
+    /**
+     * The versions of the strong ETags of an If-Match header, weak ETags never match.
+     */
+    static Set<Long> parseVersions(String ifMatch) {
+        var versions = new HashSet<Long>();
+        for (var eTag : ifMatch.split(",")) {
+            var trimmed = eTag.trim();
+            if (trimmed.length() > 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+                try {
+                    versions.add(Long.parseLong(trimmed.substring(1, trimmed.length() - 1)));
+                } catch (NumberFormatException e) {
+                    // not one of our ETags
+                }
+            }
+        }
+        return versions;
+    }
+
 
 }
@@ -1,9 +1,13 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -16,9 +20,12 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+// findByYear, and the keyset pages filtered on the year
+@CompoundIndex(name = "year_id", def = "{'year': 1, '_id': 1}", background = true)
 public class MovieInfo {
     @Id
     private String movieInfoId;
+    @Indexed(name = "name", background = true)
     @NotBlank(message = "movieInfo.name can not be null or empty")
     private String name;
     @NotNull(message = "movieInfo.year can not be null")
@@ -26,4 +33,12 @@ public class MovieInfo {
     private Integer year;
     private List<@NotBlank(message = "movieInfo.cast can not be null or empty") String> cast;
     private LocalDate release_date;
+    // incremented by every update, the ETag of the movie info; never taken from a request body
+    @Version
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate release_date) {
+        this(movieInfoId, name, year, cast, release_date, null);
+    }
 }
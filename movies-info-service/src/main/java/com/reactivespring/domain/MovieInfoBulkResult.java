@@ -0,0 +1,30 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoBulkResult {
+
+    public enum Status {
+        INSERTED,
+        // rejected by the validation, never sent to MongoDB
+        INVALID,
+        FAILED,
+        // not attempted, an earlier record of an ordered insert failed
+        SKIPPED
+    }
+
+    // position of the record in the request body
+    private long index;
+    private String movieInfoId;
+    private Status status;
+    private String error;
+    // the inserted movie info, not part of the response
+    @JsonIgnore
+    private MovieInfo movieInfo;
+}
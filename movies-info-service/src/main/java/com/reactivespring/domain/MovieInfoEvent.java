@@ -0,0 +1,26 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovieInfoEvent {
+
+    public enum Type {
+        INSERT,
+        UPDATE,
+        // the movie info only carries the id
+        DELETE
+    }
+
+    // monotonically increasing, used as the resume cursor of the stream
+    private long sequence;
+    private Type type;
+    private MovieInfo movieInfo;
+    private Instant createdAt;
+}
@@ -0,0 +1,47 @@
+package com.reactivespring.domain;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sparse fieldsets of movie infos, for the callers selecting the fields they need with ?fields=.
+ */
+public final class MovieInfoFields {
+
+    public static final List<String> NAMES = List.of("movieInfoId", "name", "year", "cast", "release_date");
+
+    private MovieInfoFields() {
+    }
+
+    /**
+     * The selected fields of the movie info in their declaration order, the id always included.
+     * Unlike the movie info itself, the omitted fields are absent rather than null once serialized.
+     */
+    public static Map<String, Object> select(MovieInfo movieInfo, List<String> fields) {
+        var selected = new LinkedHashMap<String, Object>();
+        for (var field : NAMES) {
+            if (field.equals("movieInfoId") || fields.contains(field)) {
+                selected.put(field, value(movieInfo, field));
+            }
+        }
+        return selected;
+    }
+
+    private static Object value(MovieInfo movieInfo, String field) {
+        switch (field) {
+            case "movieInfoId":
+                return movieInfo.getMovieInfoId();
+            case "name":
+                return movieInfo.getName();
+            case "year":
+                return movieInfo.getYear();
+            case "cast":
+                return movieInfo.getCast();
+            case "release_date":
+                return movieInfo.getRelease_date();
+            default:
+                throw new IllegalArgumentException("Unknown movie info field " + field);
+        }
+    }
+}
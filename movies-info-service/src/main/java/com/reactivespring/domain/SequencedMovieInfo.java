@@ -0,0 +1,27 @@
+package com.reactivespring.domain;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.beans.BeanUtils;
+
+/**
+ * A movie info of the /movieinfos/stream, with the type and the sequence of its event, the sequence being the after
+ * cursor of a reconnecting client. The movie info of a DELETE only carries the id.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class SequencedMovieInfo extends MovieInfo {
+
+    private MovieInfoEvent.Type type;
+    private long sequence;
+
+    public SequencedMovieInfo(MovieInfoEvent event) {
+        BeanUtils.copyProperties(event.getMovieInfo(), this);
+        this.type = event.getType();
+        this.sequence = event.getSequence();
+    }
+}
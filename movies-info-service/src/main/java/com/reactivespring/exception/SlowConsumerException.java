@@ -0,0 +1,8 @@
+package com.reactivespring.exception;
+
+public class SlowConsumerException extends RuntimeException {
+
+    public SlowConsumerException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,117 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on {@link MovieInfo} once the application is ready, without delaying the startup,
+ * then explains the movie info queries and warns about the ones still scanning the whole collection: the lookups
+ * by year and by name, and the keyset pages filtered on the year. Index builds run in the background, so the
+ * collection stays readable and writable meanwhile.
+ */
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    private static final List<Class<?>> DOCUMENTS = List.of(MovieInfo.class);
+
+    // one query per query path of the repositories, the values do not matter
+    private static final List<QueryProbe> QUERY_PROBES = List.of(
+            new QueryProbe("MovieInfoRepository.findByYear", MovieInfo.class,
+                    new Document("year", 0), new Document()),
+            new QueryProbe("MovieInfoRepository.findByName", MovieInfo.class,
+                    new Document("name", ""), new Document()),
+            new QueryProbe("MovieInfoRepository.findByYearAndMovieInfoIdGreaterThan", MovieInfo.class,
+                    new Document("year", 0).append("_id", new Document("$gt", "")), new Document("_id", 1)));
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final boolean ensureIndexes;
+    private final boolean checkQueryPlans;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate,
+                                 @Value("${mongo.indexes.ensureOnStartup:true}") boolean ensureIndexes,
+                                 @Value("${mongo.indexes.checkQueryPlans:true}") boolean checkQueryPlans) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.ensureIndexes = ensureIndexes;
+        this.checkQueryPlans = checkQueryPlans;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        var indexes = ensureIndexes ? ensureIndexes() : Mono.<Void>empty();
+        var queryPlans = checkQueryPlans ? checkQueryPlans().then() : Mono.<Void>empty();
+        indexes.then(queryPlans)
+                .subscribe(null, error -> log.warn("Index initialization failed", error));
+    }
+
+    public Mono<Void> ensureIndexes() {
+        var indexResolver = IndexResolver.create(reactiveMongoTemplate.getConverter().getMappingContext());
+        return Flux.fromIterable(DOCUMENTS)
+                .concatMap(document -> Flux.fromIterable(indexResolver.resolveIndexFor(document))
+                        .concatMap(index -> reactiveMongoTemplate.indexOps(document).ensureIndex(index))
+                        .doOnNext(name -> log.info("Index {} ensured on {}", name,
+                                reactiveMongoTemplate.getCollectionName(document))))
+                .then();
+    }
+
+    /**
+     * Emits the names of the queries answered by a collection scan.
+     */
+    public Flux<String> checkQueryPlans() {
+        return Flux.fromIterable(QUERY_PROBES)
+                .concatMap(probe -> reactiveMongoTemplate.executeCommand(probe.explainCommand(
+                                reactiveMongoTemplate.getCollectionName(probe.document)))
+                        .filter(explain -> hasStage(explain.get("queryPlanner", Document.class)
+                                .get("winningPlan", Document.class), "COLLSCAN"))
+                        .map(explain -> probe.name))
+                .doOnNext(name -> log.warn("{} runs a collection scan, an index is missing", name));
+    }
+
+    static boolean hasStage(Document plan, String stage) {
+        if (plan == null) {
+            return false;
+        }
+        if (stage.equals(plan.getString("stage"))) {
+            return true;
+        }
+        if (hasStage(plan.get("inputStage", Document.class), stage)) {
+            return true;
+        }
+        return plan.getList("inputStages", Document.class, List.of()).stream()
+                .anyMatch(inputStage -> hasStage(inputStage, stage));
+    }
+
+    private static final class QueryProbe {
+
+        private final String name;
+        private final Class<?> document;
+        private final Document filter;
+        private final Document sort;
+
+        QueryProbe(String name, Class<?> document, Document filter, Document sort) {
+            this.name = name;
+            this.document = document;
+            this.filter = filter;
+            this.sort = sort;
+        }
+
+        Document explainCommand(String collection) {
+            var find = new Document("find", collection)
+                    .append("filter", filter)
+                    .append("sort", sort);
+            return new Document("explain", find)
+                    .append("verbosity", "queryPlanner");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+public interface MovieInfoBulkRepository {
+
+    /**
+     * Inserts the movie infos with a single insertMany, assigning an id to the ones without.
+     * Emits one result per movie info, in order, indexed by its position in the list.
+     * An ordered insert stops at the first failure, an unordered one attempts every movie info.
+     */
+    Flux<MovieInfoBulkResult> insertMany(List<MovieInfo> movieInfos, boolean ordered);
+}
@@ -0,0 +1,74 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class MovieInfoBulkRepositoryImpl implements MovieInfoBulkRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoBulkRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfoBulkResult> insertMany(List<MovieInfo> movieInfos, boolean ordered) {
+        if (movieInfos.isEmpty()) {
+            return Flux.empty();
+        }
+        var documents = new ArrayList<Document>(movieInfos.size());
+        for (var movieInfo : movieInfos) {
+            // initial version, as set by save
+            movieInfo.setVersion(0L);
+            var document = new Document();
+            reactiveMongoTemplate.getConverter().write(movieInfo, document);
+            if (document.get("_id") == null) {
+                var id = new ObjectId();
+                document.put("_id", id);
+                movieInfo.setMovieInfoId(id.toHexString());
+            }
+            documents.add(document);
+        }
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(MovieInfo.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents,
+                        new InsertManyOptions().ordered(ordered))))
+                .map(result -> Map.<Integer, BulkWriteError>of())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()))))
+                .flatMapIterable(writeErrors -> {
+                    var firstError = writeErrors.keySet().stream().mapToInt(Integer::intValue).min()
+                            .orElse(Integer.MAX_VALUE);
+                    var results = new ArrayList<MovieInfoBulkResult>(movieInfos.size());
+                    for (int i = 0; i < movieInfos.size(); i++) {
+                        var movieInfo = movieInfos.get(i);
+                        var writeError = writeErrors.get(i);
+                        if (writeError != null) {
+                            results.add(new MovieInfoBulkResult(i, movieInfo.getMovieInfoId(),
+                                    MovieInfoBulkResult.Status.FAILED, writeError.getMessage(), null));
+                        } else if (ordered && i > firstError) {
+                            results.add(new MovieInfoBulkResult(i, movieInfo.getMovieInfoId(),
+                                    MovieInfoBulkResult.Status.SKIPPED, null, null));
+                        } else {
+                            results.add(new MovieInfoBulkResult(i, movieInfo.getMovieInfoId(),
+                                    MovieInfoBulkResult.Status.INSERTED, null, movieInfo));
+                        }
+                    }
+                    return results;
+                });
+    }
+}
@@ -0,0 +1,20 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Reads of movie infos loading only the given fields, the others being left null.
+ */
+public interface MovieInfoProjectionRepository {
+
+    /**
+     * Filtered on the year and the name when not null.
+     */
+    Flux<MovieInfo> findAllFields(Integer year, String name, Collection<String> fields);
+
+    Mono<MovieInfo> findFieldsById(String id, Collection<String> fields);
+}
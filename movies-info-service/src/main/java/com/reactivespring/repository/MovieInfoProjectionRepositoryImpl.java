@@ -0,0 +1,42 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+public class MovieInfoProjectionRepositoryImpl implements MovieInfoProjectionRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoProjectionRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<MovieInfo> findAllFields(Integer year, String name, Collection<String> fields) {
+        var query = new Query();
+        if (year != null) {
+            query.addCriteria(Criteria.where("year").is(year));
+        }
+        if (name != null) {
+            query.addCriteria(Criteria.where("name").is(name));
+        }
+        return reactiveMongoTemplate.find(project(query, fields), MovieInfo.class);
+    }
+
+    @Override
+    public Mono<MovieInfo> findFieldsById(String id, Collection<String> fields) {
+        return reactiveMongoTemplate.findOne(project(Query.query(Criteria.where("movieInfoId").is(id)), fields),
+                MovieInfo.class);
+    }
+
+    private static Query project(Query query, Collection<String> fields) {
+        fields.forEach(field -> query.fields().include(field));
+        return query;
+    }
+}
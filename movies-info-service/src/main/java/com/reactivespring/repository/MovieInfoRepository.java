@@ -1,6 +1,8 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
@@ -9,9 +11,33 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 
 @Repository
-public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String> {
+public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo, String>, MovieInfoBulkRepository,
+        MovieInfoProjectionRepository, MovieInfoUpdateRepository {
 
     Flux<MovieInfo> findByYear(Integer year);
 
     Flux<MovieInfo> findByName(String name);
+
+    /*
+     * Keyset pagination on _id, the pageable only carries the limit and the sort.
+     * Ids are either ObjectIds (generated) or strings (assigned), and a range operator only matches its own type.
+     * Strings sort before ObjectIds, so after a string id the page continues with the greater strings,
+     * then with every ObjectId.
+     */
+
+    Flux<MovieInfo> findAllBy(Pageable pageable);
+
+    // movieInfoId holds an ObjectId
+    Flux<MovieInfo> findByMovieInfoIdGreaterThan(String movieInfoId, Pageable pageable);
+
+    @Query("{ '$or': [ { '_id': { '$gt': ?0 } }, { '_id': { '$type': 'objectId' } } ] }")
+    Flux<MovieInfo> findByStringMovieInfoIdGreaterThan(String movieInfoId, Pageable pageable);
+
+    Flux<MovieInfo> findByYear(Integer year, Pageable pageable);
+
+    // movieInfoId holds an ObjectId
+    Flux<MovieInfo> findByYearAndMovieInfoIdGreaterThan(Integer year, String movieInfoId, Pageable pageable);
+
+    @Query("{ 'year': ?0, '$or': [ { '_id': { '$gt': ?1 } }, { '_id': { '$type': 'objectId' } } ] }")
+    Flux<MovieInfo> findByYearAndStringMovieInfoIdGreaterThan(Integer year, String movieInfoId, Pageable pageable);
 }
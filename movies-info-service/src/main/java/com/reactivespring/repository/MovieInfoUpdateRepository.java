@@ -0,0 +1,16 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+public interface MovieInfoUpdateRepository {
+
+    /**
+     * Sets the mutable fields and increments the version in a single findAndModify, returning the updated movie info.
+     * When expected versions are given, only a movie info at one of them is updated.
+     * Empty when no movie info matched.
+     */
+    Mono<MovieInfo> updateMovieInfo(String id, MovieInfo updatedMovieInfo, Set<Long> expectedVersions);
+}
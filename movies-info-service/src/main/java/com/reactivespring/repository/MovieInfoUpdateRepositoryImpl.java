@@ -0,0 +1,37 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+
+public class MovieInfoUpdateRepositoryImpl implements MovieInfoUpdateRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public MovieInfoUpdateRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<MovieInfo> updateMovieInfo(String id, MovieInfo updatedMovieInfo, Set<Long> expectedVersions) {
+        var criteria = Criteria.where("movieInfoId").is(id);
+        if (expectedVersions != null) {
+            criteria = criteria.and("version").in(expectedVersions);
+        }
+        var update = new Update()
+                .set("name", updatedMovieInfo.getName())
+                .set("year", updatedMovieInfo.getYear())
+                .set("cast", updatedMovieInfo.getCast())
+                .set("release_date", updatedMovieInfo.getRelease_date())
+                .inc("version", 1);
+
+        return reactiveMongoTemplate.findAndModify(Query.query(criteria), update,
+                FindAndModifyOptions.options().returnNew(true), MovieInfo.class);
+    }
+}
@@ -0,0 +1,241 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.config.MovieInfoEventProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the inserts, updates and deletes of the movieInfo collection, whichever instance made them,
+ * from a single change stream cursor per instance.
+ * The resume token of the last published change is saved periodically, so a restart continues where the previous
+ * run stopped. Changes between the last saved token and the stop are published again.
+ * Requires MongoDB to run as a replica set.
+ */
+@Component
+@ConditionalOnProperty(name = "movieinfo.events.source", havingValue = "change-stream")
+@Slf4j
+public class MovieInfoChangeStreamListener {
+
+    static final String RESUME_TOKEN_COLLECTION = "movieInfoEventResumeToken";
+
+    // the resume point is no longer in the oplog, 40576 on MongoDB 4.0
+    private static final Set<Integer> CHANGE_STREAM_HISTORY_LOST = Set.of(286, 40576);
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final MovieInfoEventService movieInfoEventService;
+    private final String listenerId;
+    private final Duration resumeTokenSaveInterval;
+
+    private final AtomicReference<BsonValue> resumeToken = new AtomicReference<>();
+    private final AtomicReference<BsonValue> savedResumeToken = new AtomicReference<>();
+    // where to start from when there is no resume token
+    private final AtomicReference<Instant> startAt = new AtomicReference<>(Instant.now());
+    // the saved resume token is stale, it must be deleted instead of loaded
+    private final AtomicBoolean historyLost = new AtomicBoolean();
+
+    private Disposable changeSubscription;
+    private Disposable resumeTokenSubscription;
+
+    public MovieInfoChangeStreamListener(ReactiveMongoTemplate reactiveMongoTemplate,
+                                         MovieInfoEventService movieInfoEventService,
+                                         MovieInfoEventProperties properties) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoEventService = movieInfoEventService;
+        this.listenerId = StringUtils.hasText(properties.getChangeStream().getListenerId())
+                ? properties.getChangeStream().getListenerId()
+                : defaultListenerId();
+        this.resumeTokenSaveInterval = properties.getChangeStream().getResumeTokenSaveInterval();
+    }
+
+    @PostConstruct
+    public void start() {
+        changeSubscription = loadResumeToken()
+                .thenMany(Flux.defer(this::listen))
+                // an invalidate event closes the change stream
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .transientErrors(true)
+                        .doBeforeRetry(retrySignal ->
+                                log.warn("Movie info change stream failed, reopening: {}",
+                                        retrySignal.failure().getMessage())))
+                .subscribe(this::onChange);
+
+        resumeTokenSubscription = Flux.interval(resumeTokenSaveInterval)
+                .concatMap(tick -> saveResumeToken()
+                        .onErrorResume(ex -> {
+                            log.warn("Unable to save the change stream resume token: {}", ex.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        changeSubscription.dispose();
+        resumeTokenSubscription.dispose();
+        saveResumeToken()
+                .onErrorResume(ex -> {
+                    log.warn("Unable to save the change stream resume token on shutdown: {}", ex.getMessage());
+                    return Mono.empty();
+                })
+                .block(Duration.ofSeconds(5));
+    }
+
+    private Flux<ChangeStreamEvent<MovieInfo>> listen() {
+        var options = ChangeStreamOptions.builder()
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        var token = resumeToken.get();
+        if (token != null) {
+            options.resumeAfter(token);
+        } else {
+            options.resumeAt(startAt.get());
+        }
+        log.info("Opening the movie info change stream, resuming {}", token != null ? "after " + token : "at " + startAt.get());
+
+        return reactiveMongoTemplate
+                .changeStream(reactiveMongoTemplate.getCollectionName(MovieInfo.class), options.build(), MovieInfo.class)
+                .doOnError(this::isHistoryLost, ex -> {
+                    log.error("Movie info changes after the resume token are lost, restarting from now");
+                    historyLost.set(true);
+                    resumeToken.set(null);
+                    startAt.set(Instant.now());
+                });
+    }
+
+    private void onChange(ChangeStreamEvent<MovieInfo> changeStreamEvent) {
+        var type = eventType(changeStreamEvent.getOperationType());
+        if (type != null) {
+            var movieInfo = changeStreamEvent.getBody();
+            if (movieInfo == null) {
+                movieInfo = new MovieInfo();
+                movieInfo.setMovieInfoId(documentId(changeStreamEvent));
+            }
+            movieInfoEventService.publish(type, movieInfo);
+        }
+        if (changeStreamEvent.getResumeToken() != null) {
+            resumeToken.set(changeStreamEvent.getResumeToken());
+        }
+    }
+
+    private Mono<Void> loadResumeToken() {
+        if (historyLost.get()) {
+            // reloading the stale token would fail the change stream again
+            return reactiveMongoTemplate
+                    .remove(Query.query(Criteria.where("_id").is(listenerId)), RESUME_TOKEN_COLLECTION)
+                    .doOnSuccess(deleteResult -> {
+                        savedResumeToken.set(null);
+                        historyLost.set(false);
+                    })
+                    .then();
+        }
+        if (resumeToken.get() != null) {
+            return Mono.empty();
+        }
+        return reactiveMongoTemplate.findById(listenerId, Document.class, RESUME_TOKEN_COLLECTION)
+                .doOnNext(document -> {
+                    var token = BsonDocument.parse(document.getString("token"));
+                    resumeToken.compareAndSet(null, token);
+                    savedResumeToken.set(token);
+                })
+                .then();
+    }
+
+    private Mono<Void> saveResumeToken() {
+        var token = resumeToken.get();
+        if (token == null || token.equals(savedResumeToken.get())) {
+            return Mono.empty();
+        }
+        var update = Update.update("token", token.asDocument().toJson())
+                .set("updatedAt", new Date());
+        return reactiveMongoTemplate
+                .upsert(Query.query(Criteria.where("_id").is(listenerId)), update, RESUME_TOKEN_COLLECTION)
+                .doOnSuccess(updateResult -> savedResumeToken.set(token))
+                .then();
+    }
+
+    private boolean isHistoryLost(Throwable ex) {
+        var cause = NestedExceptionUtils.getMostSpecificCause(ex);
+        return cause instanceof MongoServerException
+                && CHANGE_STREAM_HISTORY_LOST.contains(((MongoServerException) cause).getCode());
+    }
+
+    private static String defaultListenerId() {
+        try {
+            return "movies-info-service@" + InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Unable to resolve the host name, set movieinfo.events.changeStream.listenerId", e);
+        }
+    }
+
+    String getListenerId() {
+        return listenerId;
+    }
+
+    private static MovieInfoEvent.Type eventType(OperationType operationType) {
+        if (operationType == null) {
+            return null;
+        }
+        switch (operationType) {
+            case INSERT:
+                return MovieInfoEvent.Type.INSERT;
+            case UPDATE:
+            case REPLACE:
+                return MovieInfoEvent.Type.UPDATE;
+            case DELETE:
+                return MovieInfoEvent.Type.DELETE;
+            default:
+                return null;
+        }
+    }
+
+    private static String documentId(ChangeStreamEvent<MovieInfo> changeStreamEvent) {
+        var raw = changeStreamEvent.getRaw();
+        if (raw == null || raw.getDocumentKey() == null) {
+            return null;
+        }
+        var id = raw.getDocumentKey().get("_id");
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return id.toString();
+    }
+}
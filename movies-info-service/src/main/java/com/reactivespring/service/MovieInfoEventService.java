@@ -0,0 +1,277 @@
+package com.reactivespring.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.config.MovieInfoEventProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.SlowConsumerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes movie info changes to the stream subscribers.
+ * With movieinfo.events.source=local, the changes are the movie infos saved through this instance.
+ * With movieinfo.events.source=change-stream, they come from {@link MovieInfoChangeStreamListener} and cover every
+ * write to the collection.
+ * Recent events are kept in a replay buffer bounded by count, age and size, so a new subscriber gets the recent
+ * history and a reconnecting one can resume after the last sequence it has seen.
+ * Every subscriber reads from its own bounded queue, so publishing never waits for a slow subscriber, and subscribers
+ * lagging too far behind are evicted.
+ */
+@Service
+@Slf4j
+public class MovieInfoEventService {
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final MovieInfoEventProperties properties;
+    private final boolean localSource;
+
+    // guarded by this
+    private final Deque<BufferedEvent> buffer = new ArrayDeque<>();
+    private long bufferedBytes;
+    private long sequence;
+    private final List<MovieInfoEventSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong subscriberIds = new AtomicLong();
+
+    private final Counter countEvictions;
+    private final Counter ageEvictions;
+    private final Counter bytesEvictions;
+    private final Counter droppedCounter;
+
+    private Disposable slowConsumerDetection;
+
+    public MovieInfoEventService(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                 MovieInfoEventProperties properties) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.localSource = MovieInfoEventProperties.LOCAL_SOURCE.equals(properties.getSource());
+
+        Gauge.builder("movieinfo.events.buffer.events", this, MovieInfoEventService::bufferedEvents)
+                .register(meterRegistry);
+        Gauge.builder("movieinfo.events.buffer.bytes", this, MovieInfoEventService::bufferedBytes)
+                .register(meterRegistry);
+        Gauge.builder("movieinfo.events.subscribers", subscribers, List::size)
+                .register(meterRegistry);
+        this.countEvictions = evictionCounter(meterRegistry, "count");
+        this.ageEvictions = evictionCounter(meterRegistry, "age");
+        this.bytesEvictions = evictionCounter(meterRegistry, "bytes");
+        this.droppedCounter = Counter.builder("movieinfo.events.subscriber.dropped")
+                .tag("strategy", properties.getSubscriber().getOverflowStrategy().name())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startSlowConsumerDetection() {
+        slowConsumerDetection = Flux.interval(properties.getSubscriber().getCheckInterval())
+                .subscribe(tick -> detectSlowConsumers());
+    }
+
+    @PreDestroy
+    public void stopSlowConsumerDetection() {
+        if (slowConsumerDetection != null) {
+            slowConsumerDetection.dispose();
+        }
+    }
+
+    /**
+     * Called for every movie info saved through this instance, ignored unless the event source is local.
+     */
+    public void onMovieInfoSaved(MovieInfo movieInfo) {
+        if (localSource) {
+            publish(MovieInfoEvent.Type.INSERT, movieInfo);
+        }
+    }
+
+    public synchronized MovieInfoEvent publish(MovieInfoEvent.Type type, MovieInfo movieInfo) {
+        var event = new MovieInfoEvent(++sequence, type, movieInfo, Instant.now());
+        var bytes = sizeOf(movieInfo);
+        buffer.addLast(new BufferedEvent(event, bytes));
+        bufferedBytes += bytes;
+        evict();
+        subscribers.forEach(subscriber -> subscriber.getSink().tryEmitNext(event));
+        return event;
+    }
+
+    /**
+     * Buffered events with a sequence greater than {@code after} (every buffered event when null),
+     * followed by the live events.
+     * Sequences start over when the instance restarts, a cursor beyond the last sequence comes from a previous run
+     * and gets every buffered event.
+     * The stream of a subscriber evicted for being too slow ends with a {@link SlowConsumerException}.
+     */
+    public Flux<MovieInfoEvent> events(Long after) {
+        return Flux.defer(() -> {
+            MovieInfoEventSubscriber subscriber;
+            // replaying and registering under the lock, so no event is missed or duplicated in between
+            synchronized (this) {
+                evict();
+                var cursor = after;
+                if (cursor != null && cursor > sequence) {
+                    log.warn("Cursor {} is beyond the last sequence {}, replaying every buffered event",
+                            cursor, sequence);
+                    cursor = null;
+                }
+                if (cursor != null && !buffer.isEmpty() && buffer.getFirst().event.getSequence() > cursor + 1) {
+                    log.warn("Events after {} have been evicted, resuming from {}",
+                            cursor, buffer.getFirst().event.getSequence());
+                }
+                var replayFrom = cursor;
+                var replayed = buffer.stream()
+                        .map(bufferedEvent -> bufferedEvent.event)
+                        .filter(event -> replayFrom == null || event.getSequence() > replayFrom)
+                        .toArray(MovieInfoEvent[]::new);
+                subscriber = new MovieInfoEventSubscriber(subscriberIds.incrementAndGet(),
+                        replayed.length > 0 ? replayed[0].getSequence() - 1 : sequence);
+                for (var event : replayed) {
+                    subscriber.getSink().tryEmitNext(event);
+                }
+                subscribers.add(subscriber);
+            }
+            return subscriberEvents(subscriber);
+        });
+    }
+
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    /**
+     * Evicts the subscribers lagging more than maxLag events behind, or lagging without any delivery for maxStall.
+     */
+    void detectSlowConsumers() {
+        var lastSequence = lastSequence();
+        var maxStallNanos = properties.getSubscriber().getMaxStall().toNanos();
+        for (var subscriber : subscribers) {
+            var lag = subscriber.lag(lastSequence);
+            if (lag > properties.getSubscriber().getMaxLag()) {
+                evictSubscriber(subscriber, "lag", lag + " events behind");
+            } else if (lag > 0 && subscriber.nanosSinceLastDelivery() > maxStallNanos) {
+                evictSubscriber(subscriber, "stall", "no event consumed for " + properties.getSubscriber().getMaxStall());
+            }
+        }
+    }
+
+    synchronized int bufferedEvents() {
+        return buffer.size();
+    }
+
+    synchronized long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private Flux<MovieInfoEvent> subscriberEvents(MovieInfoEventSubscriber subscriber) {
+        var lagGauge = Gauge.builder("movieinfo.events.subscriber.lag", subscriber,
+                        s -> s.lag(lastSequence()))
+                .tag("subscriber", String.valueOf(subscriber.getId()))
+                .register(meterRegistry);
+
+        return bounded(subscriber.getSink().asFlux(), subscriber)
+                .doOnNext(subscriber::delivered)
+                .takeUntilOther(subscriber.evicted())
+                .concatWith(Flux.defer(() -> subscriber.getEvictionReason() != null
+                        ? Flux.error(new SlowConsumerException(subscriber.getEvictionReason()))
+                        : Flux.empty()))
+                .doFinally(signalType -> {
+                    subscribers.remove(subscriber);
+                    meterRegistry.remove(lagGauge);
+                });
+    }
+
+    private Flux<MovieInfoEvent> bounded(Flux<MovieInfoEvent> events, MovieInfoEventSubscriber subscriber) {
+        var queueSize = properties.getSubscriber().getQueueSize();
+        switch (properties.getSubscriber().getOverflowStrategy()) {
+            case DROP_NEWEST:
+                return events.onBackpressureBuffer(queueSize, dropped -> droppedCounter.increment(),
+                        BufferOverflowStrategy.DROP_LATEST);
+            case DISCONNECT:
+                return events.onBackpressureBuffer(queueSize, dropped -> droppedCounter.increment(),
+                                BufferOverflowStrategy.ERROR)
+                        .onErrorMap(Exceptions::isOverflow, ex -> {
+                            evictedCounter("overflow").increment();
+                            log.warn("Disconnecting the stream subscriber {}: queue of {} events is full",
+                                    subscriber.getId(), queueSize);
+                            return new SlowConsumerException("queue of " + queueSize + " events is full");
+                        });
+            case DROP_OLDEST:
+            default:
+                return events.onBackpressureBuffer(queueSize, dropped -> droppedCounter.increment(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+        }
+    }
+
+    private void evictSubscriber(MovieInfoEventSubscriber subscriber, String reason, String detail) {
+        log.warn("Evicting the slow stream subscriber {}: {}", subscriber.getId(), detail);
+        evictedCounter(reason).increment();
+        subscriber.evict(detail);
+    }
+
+    private Counter evictedCounter(String reason) {
+        return Counter.builder("movieinfo.events.subscriber.evicted")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private void evict() {
+        var oldest = Instant.now().minus(properties.getBuffer().getMaxAge());
+        var maxBytes = properties.getBuffer().getMaxBytes().toBytes();
+        while (!buffer.isEmpty()) {
+            Counter reason;
+            if (buffer.size() > properties.getBuffer().getMaxEvents()) {
+                reason = countEvictions;
+            } else if (bufferedBytes > maxBytes) {
+                reason = bytesEvictions;
+            } else if (buffer.getFirst().event.getCreatedAt().isBefore(oldest)) {
+                reason = ageEvictions;
+            } else {
+                return;
+            }
+            bufferedBytes -= buffer.removeFirst().bytes;
+            reason.increment();
+        }
+    }
+
+    private long sizeOf(MovieInfo movieInfo) {
+        try {
+            return objectMapper.writeValueAsBytes(movieInfo).length;
+        } catch (JsonProcessingException e) {
+            log.warn("Unable to measure the movie info: {}", movieInfo.getMovieInfoId(), e);
+            return 0;
+        }
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("movieinfo.events.buffer.evictions")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static final class BufferedEvent {
+
+        private final MovieInfoEvent event;
+        private final long bytes;
+
+        private BufferedEvent(MovieInfoEvent event, long bytes) {
+            this.event = event;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfoEvent;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Delivery state of one stream subscriber.
+ */
+class MovieInfoEventSubscriber {
+
+    private final long id;
+    private final Sinks.Many<MovieInfoEvent> sink = Sinks.many().unicast().onBackpressureBuffer();
+    private final Sinks.Empty<Void> eviction = Sinks.empty();
+    private volatile long deliveredSequence;
+    private volatile long lastDeliveryNanos = System.nanoTime();
+    private volatile String evictionReason;
+
+    MovieInfoEventSubscriber(long id, long deliveredSequence) {
+        this.id = id;
+        this.deliveredSequence = deliveredSequence;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Sinks.Many<MovieInfoEvent> getSink() {
+        return sink;
+    }
+
+    void delivered(MovieInfoEvent event) {
+        deliveredSequence = event.getSequence();
+        lastDeliveryNanos = System.nanoTime();
+    }
+
+    long lag(long lastSequence) {
+        return Math.max(0, lastSequence - deliveredSequence);
+    }
+
+    long nanosSinceLastDelivery() {
+        return System.nanoTime() - lastDeliveryNanos;
+    }
+
+    void evict(String reason) {
+        evictionReason = reason;
+        eviction.tryEmitEmpty();
+    }
+
+    Mono<Void> evicted() {
+        return eviction.asMono();
+    }
+
+    String getEvictionReason() {
+        return evictionReason;
+    }
+}
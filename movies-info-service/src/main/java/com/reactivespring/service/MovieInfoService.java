@@ -1,49 +1,222 @@
 package com.reactivespring.service;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.domain.MovieInfoFields;
+import com.reactivespring.domain.MovieInfoPage;
 import com.reactivespring.repository.MovieInfoRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 @Service
 public class MovieInfoService {
 
     private MovieInfoRepository movieInfoRepository;
+    private Validator validator;
+
+    @Value("${movieinfo.bulk.batchSize:500}")
+    private int bulkBatchSize;
 
-    public MovieInfoService(MovieInfoRepository movieInfoRepository) {
+    public MovieInfoService(MovieInfoRepository movieInfoRepository, Validator validator) {
 
         this.movieInfoRepository = movieInfoRepository;
+        this.validator = validator;
     }
 
+    /**
+     * Inserts the movie info, a movie info with the id of an existing one is a conflict.
+     */
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
 
-        return movieInfoRepository.save(movieInfo);
+        return movieInfoRepository.save(movieInfo)
+                .onErrorMap(DuplicateKeyException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT,
+                        "A movie info with the id " + movieInfo.getMovieInfoId() + " already exists"));
+    }
+
+    /**
+     * Validates the movie infos and inserts the valid ones in batches, one insertMany per batch.
+     * At most one batch is read ahead of the insert in progress, so the body is consumed at the pace of MongoDB.
+     * An ordered insert stops inserting at the first failed insert: every following record, invalid ones included,
+     * is still read and reported as skipped, so each record of the body gets its result.
+     */
+    public Flux<MovieInfoBulkResult> bulkInsertMovieInfos(Flux<MovieInfo> movieInfos, boolean ordered) {
+        return Flux.defer(() -> {
+            var failed = new AtomicBoolean();
+            return movieInfos
+                    .index()
+                    .buffer(bulkBatchSize)
+                    .concatMap(batch -> failed.get()
+                            ? Mono.just(skipped(batch))
+                            : insertBatch(batch, ordered)
+                            .collectList()
+                            .map(results -> ordered ? skipAfterFirstFailure(results, failed) : results), 1)
+                    .concatMapIterable(results -> results);
+        });
+    }
+
+    private static List<MovieInfoBulkResult> skipped(List<Tuple2<Long, MovieInfo>> batch) {
+        return batch.stream()
+                .map(record -> new MovieInfoBulkResult(record.getT1(), record.getT2().getMovieInfoId(),
+                        MovieInfoBulkResult.Status.SKIPPED, null, null))
+                .collect(Collectors.toList());
+    }
+
+    // the results are ordered by index, the valid records after the failure are already skipped by insertMany
+    private static List<MovieInfoBulkResult> skipAfterFirstFailure(List<MovieInfoBulkResult> results,
+                                                                   AtomicBoolean failed) {
+        for (var result : results) {
+            if (failed.get() && result.getStatus() == MovieInfoBulkResult.Status.INVALID) {
+                result.setStatus(MovieInfoBulkResult.Status.SKIPPED);
+                result.setError(null);
+            } else if (result.getStatus() == MovieInfoBulkResult.Status.FAILED) {
+                failed.set(true);
+            }
+        }
+        return results;
+    }
+
+    private Flux<MovieInfoBulkResult> insertBatch(List<Tuple2<Long, MovieInfo>> batch, boolean ordered) {
+        var invalid = new ArrayList<MovieInfoBulkResult>();
+        var validIndexes = new ArrayList<Long>();
+        var valid = new ArrayList<MovieInfo>();
+        for (var record : batch) {
+            var violations = validator.validate(record.getT2());
+            if (violations.isEmpty()) {
+                validIndexes.add(record.getT1());
+                valid.add(record.getT2());
+            } else {
+                var error = violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining(","));
+                invalid.add(new MovieInfoBulkResult(record.getT1(), record.getT2().getMovieInfoId(),
+                        MovieInfoBulkResult.Status.INVALID, error, null));
+            }
+        }
+
+        return Flux.fromIterable(invalid)
+                .concatWith(movieInfoRepository.insertMany(valid, ordered)
+                        .doOnNext(result -> result.setIndex(validIndexes.get((int) result.getIndex()))))
+                .sort((first, second) -> Long.compare(first.getIndex(), second.getIndex()));
     }
 
     public Flux<MovieInfo> getAllMovieInfos() {
         return movieInfoRepository.findAll();
     }
 
+    /**
+     * One page of movie infos ordered by id, optionally filtered by year, starting after the continuation token.
+     * One extra movie info is read to tell whether there is a next page.
+     */
+    public Mono<MovieInfoPage> getMovieInfoPage(Integer year, String after, int limit) {
+        var afterId = after != null ? decodeToken(after) : null;
+        var pageable = PageRequest.of(0, limit + 1, Sort.by("movieInfoId"));
+
+        Flux<MovieInfo> movieInfos;
+        if (afterId == null) {
+            movieInfos = year != null
+                    ? movieInfoRepository.findByYear(year, pageable)
+                    : movieInfoRepository.findAllBy(pageable);
+        } else if (ObjectId.isValid(afterId)) {
+            movieInfos = year != null
+                    ? movieInfoRepository.findByYearAndMovieInfoIdGreaterThan(year, afterId, pageable)
+                    : movieInfoRepository.findByMovieInfoIdGreaterThan(afterId, pageable);
+        } else {
+            movieInfos = year != null
+                    ? movieInfoRepository.findByYearAndStringMovieInfoIdGreaterThan(year, afterId, pageable)
+                    : movieInfoRepository.findByStringMovieInfoIdGreaterThan(afterId, pageable);
+        }
+
+        return movieInfos
+                .collectList()
+                .map(page -> {
+                    if (page.size() <= limit) {
+                        return new MovieInfoPage(page, null);
+                    }
+                    var lastMovieInfo = page.get(limit - 1);
+                    return new MovieInfoPage(page.subList(0, limit), encodeToken(lastMovieInfo.getMovieInfoId()));
+                });
+    }
+
     public Mono<MovieInfo> getMovieInfoById(String id) {
         return movieInfoRepository.findById(id);
     }
 
+    /**
+     * One findAndModify, so concurrent updates are applied one after the other instead of overwriting each other.
+     */
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setRelease_date(updatedMovieInfo.getRelease_date());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    return movieInfoRepository.save(movieInfo);
-                });
+        return movieInfoRepository.updateMovieInfo(id, updatedMovieInfo, null);
+    }
+
+    /**
+     * Updates the movie info only when its current version is one of the expected versions (If-Match).
+     */
+    public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id, Set<Long> expectedVersions) {
+        return movieInfoRepository.updateMovieInfo(id, updatedMovieInfo, expectedVersions)
+                // not updated, missing or at another version
+                .switchIfEmpty(Mono.defer(() -> movieInfoRepository.existsById(id)
+                        .flatMap(exists -> exists
+                                ? Mono.error(new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+                                "The movie info is no longer at the version of the If-Match ETag"))
+                                : Mono.empty())));
     }
 
     public Mono<Void> deleteMovieInfo(String id) {
         return movieInfoRepository.deleteById(id);
     }
 
+    /**
+     * Movie infos reduced to the given fields, both in the MongoDB projection and in the serialized response.
+     * The year and the name filter them when not null.
+     */
+    public Flux<Map<String, Object>> getMovieInfoFields(Integer year, String name, List<String> fields) {
+        return Mono.fromCallable(() -> checkFields(fields))
+                .flatMapMany(checkedFields -> movieInfoRepository.findAllFields(year, name, checkedFields)
+                        .map(movieInfo -> MovieInfoFields.select(movieInfo, checkedFields)));
+    }
+
+    public Mono<Map<String, Object>> getMovieInfoFieldsById(String id, List<String> fields) {
+        return Mono.fromCallable(() -> checkFields(fields))
+                .flatMap(checkedFields -> movieInfoRepository.findFieldsById(id, checkedFields)
+                        .map(movieInfo -> MovieInfoFields.select(movieInfo, checkedFields)));
+    }
+
+    private static List<String> checkFields(List<String> fields) {
+        if (fields.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "fields must hold at least one of "
+                    + MovieInfoFields.NAMES);
+        }
+        var unknownFields = fields.stream()
+                .filter(field -> !MovieInfoFields.NAMES.contains(field))
+                .collect(Collectors.toList());
+        if (!unknownFields.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown fields " + unknownFields
+                    + ", the fields are " + MovieInfoFields.NAMES);
+        }
+        return fields;
+    }
+
     public Flux<MovieInfo> getMovieInfoByYear(Integer year) {
         return movieInfoRepository.findByYear(year);
     }
@@ -51,4 +224,17 @@ public class MovieInfoService {
     public Flux<MovieInfo> getMovieInfoByName(String name) {
         return movieInfoRepository.findByName(name);
     }
+
+    private static String encodeToken(String movieInfoId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(movieInfoId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeToken(String token) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "after is not a valid continuation token");
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.SequencedMovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,11 +10,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -70,6 +77,90 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void addMovieInfo_existingId() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises1",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(409);
+
+        StepVerifier.create(movieInfoRepository.findById("abc"))
+                .expectNextMatches(existing -> existing.getName().equals("Dark Knight Rises"))
+                .verifyComplete();
+    }
+
+    @Test
+    void addMovieInfo_versionIgnored() {
+        var movieInfo = new MovieInfo(null, "Batman Begins1",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 7L);
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody()
+                .jsonPath("$.version").isEqualTo(0);
+    }
+
+    @Test
+    void bulkInsertMovieInfos() {
+        var results = bulkInsert(true);
+
+        assertEquals(4, results.size());
+        assertEquals(MovieInfoBulkResult.Status.INSERTED, results.get(0).getStatus());
+        assertNotNull(results.get(0).getMovieInfoId());
+        assertEquals(MovieInfoBulkResult.Status.INVALID, results.get(1).getStatus());
+        assertEquals("movieInfo.year mst be a positive value", results.get(1).getError());
+        assertEquals(MovieInfoBulkResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals(MovieInfoBulkResult.Status.SKIPPED, results.get(3).getStatus());
+        assertEquals(4, movieInfoRepository.count().block());
+    }
+
+    @Test
+    void bulkInsertMovieInfos_unordered() {
+        var results = bulkInsert(false);
+
+        assertEquals(4, results.size());
+        assertEquals(MovieInfoBulkResult.Status.INSERTED, results.get(0).getStatus());
+        assertEquals(MovieInfoBulkResult.Status.INVALID, results.get(1).getStatus());
+        assertEquals(MovieInfoBulkResult.Status.FAILED, results.get(2).getStatus());
+        assertEquals("abc", results.get(2).getMovieInfoId());
+        assertEquals(MovieInfoBulkResult.Status.INSERTED, results.get(3).getStatus());
+        assertEquals(3, results.get(3).getIndex());
+        assertEquals(5, movieInfoRepository.count().block());
+    }
+
+    private List<MovieInfoBulkResult> bulkInsert(boolean ordered) {
+        // a new movie info, an invalid one, a duplicate id and another new one
+        var body = "{\"name\":\"Batman Begins1\",\"year\":2005,\"cast\":[\"Christian Bale\"]}\n"
+                + "{\"name\":\"Batman Begins2\",\"year\":-1,\"cast\":[\"Christian Bale\"]}\n"
+                + "{\"movieInfoId\":\"abc\",\"name\":\"Dark Knight Rises\",\"year\":2012}\n"
+                + "{\"name\":\"Batman Begins3\",\"year\":2005,\"cast\":[\"Christian Bale\"]}\n";
+
+        return webTestClient
+                .post()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URL + "/bulk")
+                        .queryParam("ordered", ordered)
+                        .build())
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(MovieInfoBulkResult.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+    }
+
     @Test
     void getAllMovieInfos() {
         webTestClient
@@ -136,6 +227,77 @@ class MoviesInfoControllerIntgTest {
 //                });
     }
 
+    @Test
+    void getAllMovieInfoFields() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(MOVIES_INFO_URL)
+                        .queryParam("fields", "name,year")
+                        .queryParam("year", 2005)
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].movieInfoId").exists()
+                .jsonPath("$[0].name").isEqualTo("Batman Begins")
+                .jsonPath("$[0].year").isEqualTo(2005)
+                .jsonPath("$[0].cast").doesNotExist()
+                .jsonPath("$[0].release_date").doesNotExist();
+    }
+
+    @Test
+    void getMovieInfoFieldsById() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/{id}?fields=cast", "abc")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.movieInfoId").isEqualTo("abc")
+                .jsonPath("$.cast[1]").isEqualTo("Tom Hardy")
+                .jsonPath("$.name").doesNotExist();
+    }
+
+    @Test
+    void getAllMovieInfoFields_unknownField() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name,budget")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getAllMovieInfoFields_empty() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getAllMovieInfoFields_paged() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name&limit=10")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name&after=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void getMovieInfoById_notFound() {
         var movieInfoId = "foo";
@@ -172,6 +334,58 @@ class MoviesInfoControllerIntgTest {
                 });
     }
 
+    @Test
+    void getMovieInfoById_notModified() {
+        var eTag = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .returnResult(MovieInfo.class)
+                .getResponseHeaders()
+                .getETag();
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .ifNoneMatch(eTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+    }
+
+    @Test
+    void updateMovieInfo_ifMatch() {
+        var movieInfo = new MovieInfo(null, "Dark Night Rises 1",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, "\"1\"");
+
+        // the version is now 1
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL + "/{id}", "abc")
+                .header(HttpHeaders.IF_MATCH, "\"0\"")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(412);
+    }
+
     @Test
     void updateMovieInfo_notFound() {
         var movieInfo = new MovieInfo(null, "Dark Night Rises 1",
@@ -201,6 +415,63 @@ class MoviesInfoControllerIntgTest {
 //                .expectBody(Void.class);
     }
 
+    @Test
+    void getMovieInfoPage() {
+        var firstPage = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2)
+                .returnResult();
+
+        // string ids sort before generated ObjectIds
+        assertEquals("abc", firstPage.getResponseBody().get(0).getMovieInfoId());
+        var link = firstPage.getResponseHeaders().getFirst(HttpHeaders.LINK);
+        assertNotNull(link);
+        assertTrue(link.endsWith("; rel=\"next\""));
+        var nextUri = link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+
+        var secondPage = webTestClient
+                .get()
+                .uri(nextUri)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1)
+                .returnResult();
+
+        assertNull(secondPage.getResponseHeaders().getFirst(HttpHeaders.LINK));
+        assertNotEquals(firstPage.getResponseBody().get(1).getMovieInfoId(),
+                secondPage.getResponseBody().get(0).getMovieInfoId());
+    }
+
+    @Test
+    void getMovieInfoPage_byYear() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2&year=2005")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1)
+                .consumeWith(result -> assertNull(result.getResponseHeaders().getFirst(HttpHeaders.LINK)));
+    }
+
+    @Test
+    void getMovieInfoPage_invalidLimit() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=0")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void getAllMovieInfos_stream() {
         var movieInfo = new MovieInfo(null, "Batman Begins1",
@@ -227,14 +498,71 @@ class MoviesInfoControllerIntgTest {
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
-                .returnResult(MovieInfo.class)
+                .returnResult(SequencedMovieInfo.class)
                 .getResponseBody();
 
         StepVerifier.create(moviesStreamFlux)
                 .assertNext(movieInfo1 -> {
                     assert movieInfo1.getMovieInfoId() != null;
+                    assert movieInfo1.getSequence() > 0;
                 })
                 .thenCancel()
                 .verify();
     }
-}
\ No newline at end of file
+
+    @Test
+    void getMovieInfoEvents_resumeFromLastEventId() {
+        var first = postMovieInfo("Batman Begins2");
+
+        var eventFlux = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieInfo>>() {
+                })
+                .getResponseBody();
+
+        var firstEvent = eventFlux
+                .filter(event -> first.getMovieInfoId().equals(event.data().getMovieInfoId()))
+                .blockFirst(Duration.ofSeconds(5));
+        assertNotNull(firstEvent);
+        assertNotNull(firstEvent.id());
+
+        var second = postMovieInfo("Batman Begins3");
+
+        var resumedFlux = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/events")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", firstEvent.id())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<MovieInfo>>() {
+                })
+                .getResponseBody();
+
+        StepVerifier.create(resumedFlux)
+                .assertNext(event -> assertEquals(second.getMovieInfoId(), event.data().getMovieInfoId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    private MovieInfo postMovieInfo(String name) {
+        var movieInfo = new MovieInfo(null, name,
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        return webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(MovieInfo.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
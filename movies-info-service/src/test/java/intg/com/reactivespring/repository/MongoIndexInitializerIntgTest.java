@@ -0,0 +1,38 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataMongoTest
+@ActiveProfiles("test")
+class MongoIndexInitializerIntgTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Test
+    void ensureIndexes() {
+        var mongoIndexInitializer = new MongoIndexInitializer(reactiveMongoTemplate, true, true);
+
+        mongoIndexInitializer.ensureIndexes().block();
+
+        var indexNames = reactiveMongoTemplate.indexOps(MovieInfo.class)
+                .getIndexInfo()
+                .map(IndexInfo::getName)
+                .collectList()
+                .block();
+        assertTrue(indexNames.contains("year_id"), "indexes: " + indexNames);
+        assertTrue(indexNames.contains("name"), "indexes: " + indexNames);
+
+        StepVerifier.create(mongoIndexInitializer.checkQueryPlans())
+                .verifyComplete();
+    }
+}
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import reactor.test.StepVerifier;
 
@@ -49,6 +51,21 @@ class MovieInfoRepositoryIntgTest {
                 .verifyComplete();
     }
 
+    @Test
+    void findByStringMovieInfoIdGreaterThan() {
+        var pageable = PageRequest.of(0, 10, Sort.by("movieInfoId"));
+
+        // after a string id come the greater strings, then every ObjectId
+        StepVerifier.create(movieInfoRepository.findByStringMovieInfoIdGreaterThan("abc", pageable))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        StepVerifier.create(movieInfoRepository.findByStringMovieInfoIdGreaterThan("aaa", pageable))
+                .assertNext(movieInfo -> assertEquals("abc", movieInfo.getMovieInfoId()))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     @Test
     void findById() {
         var moviesInfoMono = movieInfoRepository.findById("abc").log();
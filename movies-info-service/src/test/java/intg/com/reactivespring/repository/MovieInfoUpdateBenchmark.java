@@ -0,0 +1,91 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Concurrent updates of a few movie infos, read then saved as before, and with a single findAndModify.
+ * Run with -Dbenchmark=true.
+ */
+@DataMongoTest
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MovieInfoUpdateBenchmark {
+
+    static final int UPDATES = 20_000;
+    static final int CONCURRENCY = 64;
+    static final List<String> IDS = List.of("a", "b", "c", "d");
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @BeforeEach
+    void setUp() {
+        movieInfoRepository.deleteAll()
+                .thenMany(Flux.fromIterable(IDS)
+                        .flatMap(id -> movieInfoRepository.save(new MovieInfo(id, "Batman Begins", 2005,
+                                List.of("Christian Bale"), LocalDate.parse("2005-06-15")))))
+                .blockLast();
+    }
+
+    MovieInfo updatedMovieInfo(int i) {
+        return new MovieInfo(null, "Batman Begins " + i, 2005, List.of("Christian Bale"), LocalDate.parse("2005-06-15"));
+    }
+
+    Mono<MovieInfo> readThenSave(int i) {
+        return movieInfoRepository.findById(IDS.get(i % IDS.size()))
+                .flatMap(movieInfo -> {
+                    movieInfo.setName(updatedMovieInfo(i).getName());
+                    return movieInfoRepository.save(movieInfo);
+                });
+    }
+
+    Mono<MovieInfo> findAndModify(int i) {
+        return movieInfoRepository.updateMovieInfo(IDS.get(i % IDS.size()), updatedMovieInfo(i), null);
+    }
+
+    long run(String name, Function<Integer, Mono<MovieInfo>> update) {
+        var conflicts = new AtomicLong();
+        var start = System.nanoTime();
+        var applied = Flux.range(0, UPDATES)
+                .flatMap(i -> update.apply(i)
+                        .onErrorResume(OptimisticLockingFailureException.class, ex -> {
+                            conflicts.incrementAndGet();
+                            return Mono.empty();
+                        }), CONCURRENCY)
+                .count()
+                .block();
+        var elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("%s: %d updates applied, %d conflicts, %d ms, %d updates/s%n", name, applied,
+                conflicts.get(), elapsedMillis, applied * 1000 / elapsedMillis);
+        return applied;
+    }
+
+    @Test
+    void concurrentUpdates() {
+        run("findById + save", this::readThenSave);
+        setUp();
+
+        var applied = run("findAndModify", this::findAndModify);
+
+        // every update applies, none is lost or rejected
+        assertEquals(UPDATES, applied);
+        var versions = movieInfoRepository.findAllById(IDS).map(MovieInfo::getVersion).reduce(0L, Long::sum).block();
+        assertEquals(UPDATES, versions);
+    }
+}
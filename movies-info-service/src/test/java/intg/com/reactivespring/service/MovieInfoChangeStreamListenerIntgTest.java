@@ -0,0 +1,144 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.ServerAddress;
+import com.reactivespring.config.MovieInfoEventProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@ActiveProfiles("test")
+@TestPropertySource(
+        properties = {
+                "movieinfo.events.source=change-stream",
+                "movieinfo.events.changeStream.listenerId=test",
+                "movieinfo.events.changeStream.resumeTokenSaveInterval=100ms",
+                // change streams need a replica set
+                "spring.mongodb.embedded.version=4.0.21",
+                "spring.mongodb.embedded.storage.repl-set-name=rs0"
+        }
+)
+class MovieInfoChangeStreamListenerIntgTest {
+
+    @Autowired
+    MovieInfoRepository movieInfoRepository;
+
+    @Autowired
+    MovieInfoEventService movieInfoEventService;
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @AfterEach
+    void tearDown() {
+        movieInfoRepository.deleteAll().block();
+    }
+
+    @Test
+    void changesArePublished() throws InterruptedException {
+        var movieInfo = new MovieInfo(null, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+        var saved = new AtomicReference<MovieInfo>();
+
+        StepVerifier.create(movieInfoEventService.events(null))
+                .then(() -> saved.set(movieInfoRepository.save(movieInfo).block()))
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.INSERT, event.getType());
+                    assertEquals("Batman Begins", event.getMovieInfo().getName());
+                })
+                .then(() -> {
+                    saved.get().setName("Batman Begins1");
+                    movieInfoRepository.save(saved.get()).block();
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.UPDATE, event.getType());
+                    assertEquals("Batman Begins1", event.getMovieInfo().getName());
+                })
+                .then(() -> movieInfoRepository.deleteById(saved.get().getMovieInfoId()).block())
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEvent.Type.DELETE, event.getType());
+                    assertEquals(saved.get().getMovieInfoId(), event.getMovieInfo().getMovieInfoId());
+                    assertNull(event.getMovieInfo().getName());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+
+        Thread.sleep(500);
+        var resumeToken = reactiveMongoTemplate
+                .findById("test", Document.class, MovieInfoChangeStreamListener.RESUME_TOKEN_COLLECTION)
+                .block();
+        assertNotNull(resumeToken);
+        assertNotNull(resumeToken.getString("token"));
+    }
+
+    @Test
+    void historyLost_staleTokenDeletedAndRestartedFromNow() {
+        var properties = new MovieInfoEventProperties();
+        properties.getChangeStream().setListenerId("history-lost");
+        var staleToken = new BsonDocument("_data", new BsonString("stale"));
+        reactiveMongoTemplate.save(new Document("_id", "history-lost").append("token", staleToken.toJson()),
+                        MovieInfoChangeStreamListener.RESUME_TOKEN_COLLECTION)
+                .block();
+
+        // the server answers the stale token with ChangeStreamHistoryLost
+        var template = spy(reactiveMongoTemplate);
+        doAnswer(invocation -> {
+            ChangeStreamOptions options = invocation.getArgument(1);
+            if (options.getResumeToken().filter(staleToken::equals).isPresent()) {
+                return Flux.error(new MongoServerException(286, "history lost", new ServerAddress()));
+            }
+            return invocation.callRealMethod();
+        }).when(template).changeStream(anyString(), any(ChangeStreamOptions.class), eq(MovieInfo.class));
+
+        var listener = new MovieInfoChangeStreamListener(template, movieInfoEventService, properties);
+        listener.start();
+        try {
+            verify(template, timeout(5000)).changeStream(anyString(),
+                    argThat(options -> options.getResumeToken().isEmpty()), eq(MovieInfo.class));
+            verify(template, times(1)).changeStream(anyString(),
+                    argThat(options -> options.getResumeToken().isPresent()), eq(MovieInfo.class));
+            assertNull(reactiveMongoTemplate
+                    .findById("history-lost", Document.class, MovieInfoChangeStreamListener.RESUME_TOKEN_COLLECTION)
+                    .block());
+        } finally {
+            listener.stop();
+        }
+    }
+
+    @Test
+    void listenerId_defaultsToHostName() {
+        var listener = new MovieInfoChangeStreamListener(reactiveMongoTemplate, movieInfoEventService,
+                new MovieInfoEventProperties());
+
+        assertTrue(listener.getListenerId().startsWith("movies-info-service@"));
+    }
+}
@@ -0,0 +1,70 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Encodes one million movie infos with the default encoder and with the streaming one.
+ * Run with -Dbenchmark=true.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StreamingJsonArrayEncoderBenchmark {
+
+    static final int COUNT = 1_000_000;
+
+    ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    Flux<MovieInfo> movieInfos() {
+        return Flux.range(0, COUNT)
+                .map(i -> new MovieInfo("id-" + i, "Batman Begins", 2005, List.of("Christian Bale", "Michael Cane"),
+                        LocalDate.parse("2005-06-15")));
+    }
+
+    long run(String name, Encoder<Object> encoder) {
+        System.gc();
+        var memoryBean = ManagementFactory.getMemoryMXBean();
+        var baseline = memoryBean.getHeapMemoryUsage().getUsed();
+        var peak = new AtomicLong();
+        var bytes = new AtomicLong();
+        var firstByteNanos = new AtomicLong();
+        var start = System.nanoTime();
+
+        encoder.encode(movieInfos(), DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(MovieInfo.class), MediaType.APPLICATION_JSON, null)
+                .doOnNext(dataBuffer -> {
+                    firstByteNanos.compareAndSet(0, System.nanoTime() - start);
+                    bytes.addAndGet(dataBuffer.readableByteCount());
+                    peak.accumulateAndGet(memoryBean.getHeapMemoryUsage().getUsed() - baseline, Math::max);
+                    DataBufferUtils.release(dataBuffer);
+                })
+                .blockLast();
+
+        System.out.printf("%s: %d bytes, first byte after %d ms, total %d ms, peak heap +%d MB%n", name, bytes.get(),
+                firstByteNanos.get() / 1_000_000, (System.nanoTime() - start) / 1_000_000, peak.get() / (1024 * 1024));
+        return bytes.get();
+    }
+
+    @Test
+    void encode_oneMillionMovieInfos() {
+        var collected = run("Jackson2JsonEncoder", new Jackson2JsonEncoder(objectMapper));
+        var streamed = run("StreamingJsonArrayEncoder", new StreamingJsonArrayEncoder(objectMapper));
+
+        assertEquals(collected, streamed);
+    }
+}
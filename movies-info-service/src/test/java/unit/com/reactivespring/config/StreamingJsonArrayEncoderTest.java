@@ -0,0 +1,67 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamingJsonArrayEncoderTest {
+
+    StreamingJsonArrayEncoder encoder = new StreamingJsonArrayEncoder(new ObjectMapper().findAndRegisterModules());
+
+    MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "Batman Begins", 2005, List.of("Christian Bale"), null);
+    }
+
+    String encode(Publisher<?> input, MediaType mediaType) {
+        return DataBufferUtils.join(encoder.encode(input, DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(MovieInfo.class), mediaType, null))
+                .map(dataBuffer -> dataBuffer.toString(StandardCharsets.UTF_8))
+                .block();
+    }
+
+    @Test
+    void encode_flux() {
+        var json = encode(Flux.just(movieInfo("a"), movieInfo("b")), MediaType.APPLICATION_JSON);
+
+        assertEquals("[{\"movieInfoId\":\"a\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"],"
+                + "\"release_date\":null},{\"movieInfoId\":\"b\",\"name\":\"Batman Begins\",\"year\":2005,"
+                + "\"cast\":[\"Christian Bale\"],\"release_date\":null}]", json);
+    }
+
+    @Test
+    void encode_emptyFlux() {
+        assertEquals("[]", encode(Flux.empty(), MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void encode_mono() {
+        assertEquals("{\"movieInfoId\":\"a\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"],"
+                + "\"release_date\":null}", encode(Mono.just(movieInfo("a")), MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void encode_firstElementBeforeCompletion() {
+        var output = encoder.encode(Flux.just(movieInfo("a")).concatWith(Flux.never()),
+                DefaultDataBufferFactory.sharedInstance, ResolvableType.forClass(MovieInfo.class),
+                MediaType.APPLICATION_JSON, null);
+
+        StepVerifier.create(output.map(dataBuffer -> dataBuffer.toString(StandardCharsets.UTF_8)))
+                .expectNext("[")
+                .expectNextMatches(json -> json.startsWith("{\"movieInfoId\":\"a\""))
+                .thenCancel()
+                .verify();
+    }
+}
@@ -1,6 +1,9 @@
 package com.reactivespring.controller;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.SequencedMovieInfo;
+import com.reactivespring.service.MovieInfoEventService;
 import com.reactivespring.service.MovieInfoService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -12,6 +15,7 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -29,6 +33,9 @@ public class MoviesInfoControllerUnitTest {
     @MockBean
     private MovieInfoService movieInfoServiceMock;
 
+    @MockBean
+    private MovieInfoEventService movieInfoEventServiceMock;
+
     static String MOVIES_INFO_URL = "/v1/movieinfos";
 
     @Test
@@ -169,4 +176,33 @@ public class MoviesInfoControllerUnitTest {
                 .expectStatus()
                 .isNoContent();
     }
+
+    @Test
+    void getSavedMovieInfo_emitsDeletes() {
+        var movieInfo = new MovieInfo("abc", "Dark Knight Rises",
+                2012, List.of("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        var deletedMovieInfo = new MovieInfo();
+        deletedMovieInfo.setMovieInfoId("abc");
+
+        when(movieInfoEventServiceMock.events(null)).thenReturn(Flux.just(
+                new MovieInfoEvent(1, MovieInfoEvent.Type.INSERT, movieInfo, Instant.now()),
+                new MovieInfoEvent(2, MovieInfoEvent.Type.DELETE, deletedMovieInfo, Instant.now())));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/stream")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(SequencedMovieInfo.class)
+                .consumeWith(result -> {
+                    var movieInfos = result.getResponseBody();
+                    assertEquals(2, movieInfos.size());
+                    assertEquals(MovieInfoEvent.Type.INSERT, movieInfos.get(0).getType());
+                    assertEquals("Dark Knight Rises", movieInfos.get(0).getName());
+                    assertEquals(MovieInfoEvent.Type.DELETE, movieInfos.get(1).getType());
+                    assertEquals("abc", movieInfos.get(1).getMovieInfoId());
+                    assertEquals(2, movieInfos.get(1).getSequence());
+                });
+    }
 }
@@ -0,0 +1,212 @@
+package com.reactivespring.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.config.MovieInfoEventProperties;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.exception.SlowConsumerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MovieInfoEventServiceTest {
+
+    ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    MovieInfoEventProperties properties = new MovieInfoEventProperties();
+
+    MovieInfoEventService eventService() {
+        return new MovieInfoEventService(objectMapper, meterRegistry, properties);
+    }
+
+    MovieInfo movieInfo(String id) {
+        return new MovieInfo(id, "Batman Begins",
+                2005, List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
+    }
+
+    void publish(MovieInfoEventService eventService, int count) {
+        for (int i = 0; i < count; i++) {
+            eventService.onMovieInfoSaved(movieInfo(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    void events_replayThenLive() {
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+        eventService.onMovieInfoSaved(movieInfo("b"));
+
+        StepVerifier.create(eventService.events(null))
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .assertNext(event -> assertEquals(2, event.getSequence()))
+                .then(() -> eventService.publish(MovieInfoEvent.Type.UPDATE, movieInfo("c")))
+                .assertNext(event -> {
+                    assertEquals(3, event.getSequence());
+                    assertEquals(MovieInfoEvent.Type.UPDATE, event.getType());
+                    assertEquals("c", event.getMovieInfo().getMovieInfoId());
+                })
+                .thenCancel()
+                .verify();
+
+        assertEquals(0.0, meterRegistry.get("movieinfo.events.subscribers").gauge().value());
+    }
+
+    @Test
+    void events_resumeAfterCursor() {
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+        eventService.onMovieInfoSaved(movieInfo("b"));
+        eventService.onMovieInfoSaved(movieInfo("c"));
+
+        StepVerifier.create(eventService.events(2L))
+                .assertNext(event -> assertEquals("c", event.getMovieInfo().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void events_cursorOfAPreviousRunReplaysEverything() {
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+        eventService.onMovieInfoSaved(movieInfo("b"));
+
+        StepVerifier.create(eventService.events(42L))
+                .assertNext(event -> assertEquals("a", event.getMovieInfo().getMovieInfoId()))
+                .assertNext(event -> assertEquals("b", event.getMovieInfo().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void onMovieInfoSaved_ignoredWithChangeStreamSource() {
+        properties.setSource("change-stream");
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+
+        assertEquals(0, eventService.lastSequence());
+    }
+
+    @Test
+    void publish_evictsByCount() {
+        properties.getBuffer().setMaxEvents(2);
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+        eventService.onMovieInfoSaved(movieInfo("b"));
+        eventService.onMovieInfoSaved(movieInfo("c"));
+
+        assertEquals(2, eventService.bufferedEvents());
+        assertEquals(1.0, meterRegistry.counter("movieinfo.events.buffer.evictions", "reason", "count").count());
+        StepVerifier.create(eventService.events(null))
+                .assertNext(event -> assertEquals("b", event.getMovieInfo().getMovieInfoId()))
+                .assertNext(event -> assertEquals("c", event.getMovieInfo().getMovieInfoId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void publish_evictsByBytes() {
+        properties.getBuffer().setMaxBytes(DataSize.ofBytes(1));
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+        eventService.onMovieInfoSaved(movieInfo("b"));
+
+        assertEquals(0, eventService.bufferedEvents());
+        assertEquals(0, eventService.bufferedBytes());
+        assertEquals(2.0, meterRegistry.counter("movieinfo.events.buffer.evictions", "reason", "bytes").count());
+    }
+
+    @Test
+    void publish_evictsByAge() throws InterruptedException {
+        properties.getBuffer().setMaxAge(Duration.ofMillis(50));
+        var eventService = eventService();
+        eventService.onMovieInfoSaved(movieInfo("a"));
+        Thread.sleep(100);
+        eventService.onMovieInfoSaved(movieInfo("b"));
+
+        assertEquals(1, eventService.bufferedEvents());
+        assertEquals(1.0, meterRegistry.counter("movieinfo.events.buffer.evictions", "reason", "age").count());
+        assertEquals(2, eventService.lastSequence());
+    }
+
+    @Test
+    void events_slowSubscriberDropsOldest() {
+        properties.getSubscriber().setQueueSize(2);
+        var eventService = eventService();
+
+        StepVerifier.create(eventService.events(null), 0)
+                .then(() -> publish(eventService, 5))
+                .thenRequest(2)
+                .assertNext(event -> assertEquals(4, event.getSequence()))
+                .assertNext(event -> assertEquals(5, event.getSequence()))
+                .thenCancel()
+                .verify();
+
+        assertEquals(3.0, meterRegistry.counter("movieinfo.events.subscriber.dropped",
+                "strategy", "DROP_OLDEST").count());
+    }
+
+    @Test
+    void events_slowSubscriberDropsNewest() {
+        properties.getSubscriber().setQueueSize(2);
+        properties.getSubscriber().setOverflowStrategy(MovieInfoEventProperties.OverflowStrategy.DROP_NEWEST);
+        var eventService = eventService();
+
+        StepVerifier.create(eventService.events(null), 0)
+                .then(() -> publish(eventService, 5))
+                .thenRequest(2)
+                .assertNext(event -> assertEquals(1, event.getSequence()))
+                .assertNext(event -> assertEquals(2, event.getSequence()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void events_slowSubscriberDisconnected() {
+        properties.getSubscriber().setQueueSize(2);
+        properties.getSubscriber().setOverflowStrategy(MovieInfoEventProperties.OverflowStrategy.DISCONNECT);
+        var eventService = eventService();
+
+        StepVerifier.create(eventService.events(null), 0)
+                .then(() -> publish(eventService, 5))
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(event -> true)
+                .expectError(SlowConsumerException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1.0, meterRegistry.counter("movieinfo.events.subscriber.evicted", "reason", "overflow").count());
+    }
+
+    @Test
+    void detectSlowConsumers_evictsLaggingSubscriber() {
+        properties.getSubscriber().setMaxLag(3);
+        var eventService = eventService();
+
+        // a fast subscriber is not affected
+        var fastEvents = eventService.events(null)
+                .take(5)
+                .collectList()
+                .toFuture();
+
+        StepVerifier.create(eventService.events(null), 0)
+                .then(() -> publish(eventService, 5))
+                .then(() -> assertEquals(5.0, meterRegistry.get("movieinfo.events.subscriber.lag")
+                        .tag("subscriber", "2")
+                        .gauge().value()))
+                .then(eventService::detectSlowConsumers)
+                .expectError(SlowConsumerException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(5, fastEvents.join().size());
+        assertEquals(1.0, meterRegistry.counter("movieinfo.events.subscriber.evicted", "reason", "lag").count());
+        assertEquals(0.0, meterRegistry.get("movieinfo.events.subscribers").gauge().value());
+    }
+}
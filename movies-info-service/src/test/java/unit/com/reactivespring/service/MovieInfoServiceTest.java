@@ -0,0 +1,101 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoBulkResult;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import javax.validation.Validation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+class MovieInfoServiceTest {
+
+    MovieInfoRepository movieInfoRepository = mock(MovieInfoRepository.class);
+
+    MovieInfoService movieInfoService() {
+        var movieInfoService = new MovieInfoService(movieInfoRepository,
+                Validation.buildDefaultValidatorFactory().getValidator());
+        ReflectionTestUtils.setField(movieInfoService, "bulkBatchSize", 3);
+        return movieInfoService;
+    }
+
+    MovieInfo movieInfo(String id, int year) {
+        return new MovieInfo(id, "Batman Begins", year, List.of("Christian Bale"), null);
+    }
+
+    /**
+     * An insertMany failing on the movie info with the id "dup".
+     */
+    @SuppressWarnings("unchecked")
+    void insertManyFailingOnDuplicate() {
+        when(movieInfoRepository.insertMany(any(), anyBoolean())).thenAnswer(invocation -> {
+            var movieInfos = (List<MovieInfo>) invocation.getArgument(0);
+            var ordered = (boolean) invocation.getArgument(1);
+            var results = new ArrayList<MovieInfoBulkResult>();
+            var failed = false;
+            for (int i = 0; i < movieInfos.size(); i++) {
+                var id = movieInfos.get(i).getMovieInfoId();
+                if (failed && ordered) {
+                    results.add(new MovieInfoBulkResult(i, id, MovieInfoBulkResult.Status.SKIPPED, null, null));
+                } else if ("dup".equals(id)) {
+                    failed = true;
+                    results.add(new MovieInfoBulkResult(i, id, MovieInfoBulkResult.Status.FAILED, "duplicate", null));
+                } else {
+                    results.add(new MovieInfoBulkResult(i, id, MovieInfoBulkResult.Status.INSERTED, null, null));
+                }
+            }
+            return Flux.fromIterable(results);
+        });
+    }
+
+    @Test
+    void bulkInsertMovieInfos_orderedReportsEveryRecordAfterTheFailure() {
+        insertManyFailingOnDuplicate();
+        var movieInfos = Flux.just(movieInfo("a", 2005), movieInfo("dup", 2005), movieInfo("b", -1),
+                movieInfo("c", 2005), movieInfo("d", -1), movieInfo("e", 2005), movieInfo("f", 2005));
+
+        StepVerifier.create(movieInfoService().bulkInsertMovieInfos(movieInfos, true)
+                        .map(result -> result.getMovieInfoId() + ":" + result.getStatus())
+                        .collect(Collectors.joining(",")))
+                .expectNext("a:INSERTED,dup:FAILED,b:SKIPPED,c:SKIPPED,d:SKIPPED,e:SKIPPED,f:SKIPPED")
+                .verifyComplete();
+
+        // the batches after the failure are not inserted
+        verify(movieInfoRepository, times(1)).insertMany(any(), anyBoolean());
+    }
+
+    @Test
+    void bulkInsertMovieInfos_orderedInvalidBeforeTheFailure() {
+        insertManyFailingOnDuplicate();
+        var movieInfos = Flux.just(movieInfo("a", -1), movieInfo("dup", 2005), movieInfo("b", -1));
+
+        StepVerifier.create(movieInfoService().bulkInsertMovieInfos(movieInfos, true)
+                        .map(result -> result.getMovieInfoId() + ":" + result.getStatus()))
+                .expectNext("a:INVALID", "dup:FAILED", "b:SKIPPED")
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkInsertMovieInfos_unorderedKeepsInserting() {
+        insertManyFailingOnDuplicate();
+        var movieInfos = Flux.just(movieInfo("dup", 2005), movieInfo("b", -1), movieInfo("c", 2005),
+                movieInfo("d", 2005));
+
+        StepVerifier.create(movieInfoService().bulkInsertMovieInfos(movieInfos, false)
+                        .map(MovieInfoBulkResult::getStatus))
+                .expectNext(MovieInfoBulkResult.Status.FAILED, MovieInfoBulkResult.Status.INVALID,
+                        MovieInfoBulkResult.Status.INSERTED, MovieInfoBulkResult.Status.INSERTED)
+                .verifyComplete();
+
+        verify(movieInfoRepository, times(2)).insertMany(any(), anyBoolean());
+    }
+}
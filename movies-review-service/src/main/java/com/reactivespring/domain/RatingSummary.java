@@ -0,0 +1,37 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class RatingSummary {
+
+    // reviews rated 10 and above are counted in the last bucket
+    public static final int MAX_BUCKET = 10;
+
+    @Id
+    private Long movieInfoId;
+    // rated reviews only
+    private long count;
+    private double sum;
+    private Double min;
+    private Double max;
+    // number of reviews per rating floored to the unit, every bucket from "0" to "10", empty ones at 0
+    private Map<String, Long> histogram;
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+
+    public static int bucket(double rating) {
+        return (int) Math.min(MAX_BUCKET, Math.max(0, Math.floor(rating)));
+    }
+}
@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.Min;
@@ -14,6 +16,15 @@ import javax.validation.constraints.NotNull;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@CompoundIndexes({
+        // findReviewsByMovieInfoId, and the pages of the reviews of a movie ordered by rating
+        @CompoundIndex(name = "movieInfoId_rating_id", def = "{'movieInfoId': 1, 'rating': 1, '_id': 1}",
+                background = true),
+        // the pages of the reviews of a movie ordered by id
+        @CompoundIndex(name = "movieInfoId_id", def = "{'movieInfoId': 1, '_id': 1}", background = true),
+        // the pages of every review ordered by rating
+        @CompoundIndex(name = "rating_id", def = "{'rating': 1, '_id': 1}", background = true)
+})
 public class Review {
 
     @Id
@@ -0,0 +1,19 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Position of the last review of a page, the next page starts after it.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewCursor {
+
+    private ReviewSort sort;
+    // null when the sort is by id, or when the review has no rating
+    private Double rating;
+    private String reviewId;
+}
@@ -0,0 +1,50 @@
+package com.reactivespring.domain;
+
+import org.springframework.data.domain.Sort;
+
+/**
+ * Orders of a review page. Ties on the rating are broken by the id, so every review has a unique position.
+ * Reviews without a rating come first by rating and last by descending rating.
+ */
+public enum ReviewSort {
+
+    RATING("rating", Sort.Direction.ASC),
+    RATING_DESC("-rating", Sort.Direction.DESC),
+    ID("_id", Sort.Direction.ASC);
+
+    private final String param;
+    private final Sort.Direction direction;
+
+    ReviewSort(String param, Sort.Direction direction) {
+        this.param = param;
+        this.direction = direction;
+    }
+
+    // null when the parameter names no order
+    public static ReviewSort of(String param) {
+        for (var sort : values()) {
+            if (sort.param.equals(param)) {
+                return sort;
+            }
+        }
+        return null;
+    }
+
+    public String getParam() {
+        return param;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    public boolean byRating() {
+        return this != ID;
+    }
+
+    public Sort toSort() {
+        return byRating()
+                ? Sort.by(direction, "rating").and(Sort.by(direction, "reviewId"))
+                : Sort.by(direction, "reviewId");
+    }
+}
@@ -25,6 +25,10 @@ public class GlobalErrorHandler implements ErrorWebExceptionHandler {
             exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
             return exchange.getResponse().writeWith(Mono.just(errorMessage));
         }
+        if (ex instanceof ReviewConflictException) {
+            exchange.getResponse().setStatusCode(HttpStatus.CONFLICT);
+            return exchange.getResponse().writeWith(Mono.just(errorMessage));
+        }
         if (ex instanceof ReviewNotFoundException) {
             exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
             return exchange.getResponse().writeWith(Mono.just(errorMessage));
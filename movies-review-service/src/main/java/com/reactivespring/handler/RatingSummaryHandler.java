@@ -0,0 +1,34 @@
+package com.reactivespring.handler;
+
+import com.reactivespring.service.RatingSummaryService;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+@Component
+public class RatingSummaryHandler {
+
+    private RatingSummaryService ratingSummaryService;
+
+    public RatingSummaryHandler(RatingSummaryService ratingSummaryService) {
+        this.ratingSummaryService = ratingSummaryService;
+    }
+
+    public Mono<ServerResponse> getRatingSummary(ServerRequest request) {
+        var movieInfoId = Long.valueOf(request.pathVariable("movieInfoId"));
+
+        return ratingSummaryService.getRatingSummary(movieInfoId)
+                .flatMap(ServerResponse.ok()::bodyValue);
+    }
+
+    /**
+     * Recomputes every rating summary from the reviews, answers once done with the number of summaries.
+     */
+    public Mono<ServerResponse> rebuildRatingSummaries(ServerRequest request) {
+        return ratingSummaryService.rebuild()
+                .flatMap(count -> ServerResponse.ok().bodyValue(Map.of("summaries", count)));
+    }
+}
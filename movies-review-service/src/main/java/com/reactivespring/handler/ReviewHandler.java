@@ -1,21 +1,35 @@
 package com.reactivespring.handler;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewPage;
+import com.reactivespring.domain.ReviewSort;
 import com.reactivespring.exception.*;
 import com.reactivespring.repository.ReviewRepository;
+import com.reactivespring.service.RatingSummaryService;
+import com.reactivespring.service.ReviewBatchLoader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Component
@@ -25,12 +39,22 @@ public class ReviewHandler {
     @Autowired
     private Validator validator;
 
-    private ReviewRepository reviewRepository;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    @Value("${reviews.lookup.maxMovieInfoIds:100}")
+    private int maxMovieInfoIds;
 
-    Sinks.Many<Review> reviewSink = Sinks.many().replay().all();
+    private ReviewRepository reviewRepository;
+    private ReviewStreamPartitions reviewStreamPartitions;
+    private RatingSummaryService ratingSummaryService;
+    private ReviewBatchLoader reviewBatchLoader;
 
-    public ReviewHandler(ReviewRepository reviewRepository) {
+    public ReviewHandler(ReviewRepository reviewRepository, ReviewStreamPartitions reviewStreamPartitions,
+                         RatingSummaryService ratingSummaryService, ReviewBatchLoader reviewBatchLoader) {
         this.reviewRepository = reviewRepository;
+        this.reviewStreamPartitions = reviewStreamPartitions;
+        this.ratingSummaryService = ratingSummaryService;
+        this.reviewBatchLoader = reviewBatchLoader;
     }
 
     /*public Mono<ServerResponse> addReview(ServerRequest request) {
@@ -67,11 +91,15 @@ public class ReviewHandler {
                     return ServerResponse.status(HttpStatus.CREATED).bodyValue(savedReview);
                 });*/
 
+        // an insert, so an existing review is never replaced and counted twice in the rating summary
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
-                .flatMap(reviewRepository::save)
+                .flatMap(reviewRepository::insert)
+                .onErrorMap(DuplicateKeyException.class,
+                        ex -> new ReviewConflictException("Review already exists: " + ex.getMessage()))
                 .doOnNext(review -> {
-                    reviewSink.tryEmitNext(review);
+                    reviewStreamPartitions.publish(review);
+                    ratingSummaryService.onReviewAdded(review);
                 })
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
 
@@ -95,15 +123,121 @@ public class ReviewHandler {
 
     public Mono<ServerResponse> getReviews(ServerRequest request) {
         var movieInfoId = request.queryParam("movieInfoId");
+        var movieInfoIds = request.queryParams().get("movieInfoIds");
 
-        Flux<Review> reviewFlux;
-        if (movieInfoId.isPresent()) {
-            reviewFlux = reviewRepository.findReviewsByMovieInfoId(Long.valueOf(movieInfoId.get()));
-        } else {
-            reviewFlux = reviewRepository.findAll();
+        var limit = request.queryParam("limit");
+        var after = request.queryParam("after");
+        var sort = request.queryParam("sort");
+        // every review, and the reviews of a movie, are always paged: without limit the first page is returned
+        if (movieInfoIds == null) {
+            return getReviewPage(request, movieInfoId.map(ReviewHandler::parseLong).orElse(null),
+                    limit.map(ReviewHandler::parseLong).orElse((long) MAX_PAGE_SIZE),
+                    sort.orElse(ReviewSort.ID.getParam()), after.orElse(null));
+        }
+        if (limit.isPresent() || after.isPresent() || sort.isPresent()) {
+            throw new ReviewDataException("limit, after and sort do not apply to movieInfoIds");
         }
-        return buildReviewsResponse(reviewFlux);
+        return buildReviewsResponse(getReviewsByMovieInfoIds(movieInfoIds, request.queryParam("limitPerMovie")));
+    }
 
+    /**
+     * The reviews of several movies with a single $in query, grouped by movie, at most limitPerMovie per movie.
+     * Within a movie the reviews come by id, so the limitPerMovie selection is the same on every call.
+     * limitPerMovie defaults to, and may not exceed, the max page size; the following reviews of a movie are read
+     * through its pages.
+     * The ids come as movieInfoIds=1,2,3 or as repeated parameters.
+     */
+    private Flux<Review> getReviewsByMovieInfoIds(List<String> movieInfoIdParams, Optional<String> limitPerMovieParam) {
+        var movieInfoIds = movieInfoIdParams.stream()
+                .flatMap(param -> Arrays.stream(param.split(",")))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(ReviewHandler::parseLong)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (movieInfoIds.isEmpty() || movieInfoIds.size() > maxMovieInfoIds) {
+            throw new ReviewDataException("movieInfoIds must hold between 1 and " + maxMovieInfoIds + " ids");
+        }
+        var limitPerMovie = limitPerMovieParam.map(ReviewHandler::parseLong).orElse((long) MAX_PAGE_SIZE);
+        if (limitPerMovie < 1 || limitPerMovie > MAX_PAGE_SIZE) {
+            throw new ReviewDataException("limitPerMovie must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return reviewRepository.findFirstReviews(movieInfoIds, (int) limitPerMovie);
+    }
+
+    /**
+     * Keyset pagination of every review or of the reviews of one movie.
+     * The first page of a movie by id goes through the batch loader, it is the page the movies service reads.
+     * sort is rating, -rating or _id (the default), limit defaults to the max page size.
+     * The Link header points to the next page, it is absent on the last page.
+     */
+    private Mono<ServerResponse> getReviewPage(ServerRequest request, Long movieInfoId, long limit, String sortParam,
+                                               String after) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ReviewDataException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        var sort = ReviewSort.of(sortParam);
+        if (sort == null) {
+            throw new ReviewDataException("sort must be rating, -rating or _id");
+        }
+        var cursor = after != null ? decodeCursor(after) : null;
+        if (cursor != null && cursor.getSort() != sort) {
+            throw new ReviewDataException("after belongs to the " + cursor.getSort().getParam() + " sort");
+        }
+
+        // one extra review tells whether there is a next page
+        var reviewFlux = movieInfoId != null && sort == ReviewSort.ID && cursor == null
+                ? reviewBatchLoader.findReviewsByMovieInfoId(movieInfoId, (int) limit + 1)
+                : reviewRepository.findReviewPage(movieInfoId, sort, cursor, (int) limit + 1);
+        return reviewFlux.collectList()
+                .map(reviews -> {
+                    if (reviews.size() <= limit) {
+                        return new ReviewPage(reviews, null);
+                    }
+                    var lastReview = reviews.get((int) limit - 1);
+                    return new ReviewPage(reviews.subList(0, (int) limit),
+                            new ReviewCursor(sort, sort.byRating() ? lastReview.getRating() : null,
+                                    lastReview.getReviewId()));
+                })
+                .flatMap(page -> {
+                    var response = ServerResponse.ok();
+                    if (page.getNext() != null) {
+                        var nextUri = UriComponentsBuilder.fromUri(request.uri())
+                                .replaceQueryParam("after", encodeCursor(page.getNext()))
+                                .build()
+                                .toUriString();
+                        response.header(HttpHeaders.LINK, "<" + nextUri + ">; rel=\"next\"");
+                    }
+                    return response.bodyValue(page.getReviews());
+                });
+    }
+
+    private static String encodeCursor(ReviewCursor cursor) {
+        var rating = cursor.getRating() != null ? cursor.getRating().toString() : "";
+        var position = cursor.getSort().getParam() + "|" + rating + "|" + cursor.getReviewId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ReviewCursor decodeCursor(String after) {
+        try {
+            // the id comes last, it may hold the separator
+            var position = new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8).split("\\|", 3);
+            var sort = ReviewSort.of(position[0]);
+            if (position.length < 3 || sort == null) {
+                throw new IllegalArgumentException(after);
+            }
+            var rating = position[1].isEmpty() ? null : Double.valueOf(position[1]);
+            return new ReviewCursor(sort, rating, position[2]);
+        } catch (IllegalArgumentException e) {
+            throw new ReviewDataException("after is not a valid cursor");
+        }
+    }
+
+    private static Long parseLong(String value) {
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new ReviewDataException("Not a number: " + value);
+        }
     }
 
     private static Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviewFlux) {
@@ -112,28 +246,16 @@ public class ReviewHandler {
 
     public Mono<ServerResponse> updateReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        /*var existingReview = reviewRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given review id " + reviewId)));*/
-        var existingReview = reviewRepository.findById(reviewId);
-        //.switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given review id " + reviewId)));
-
-        /*return existingReview
-                .flatMap(review -> request.bodyToMono(Review.class)
-                        .map(reqReview -> {
-                            review.setComment(reqReview.getComment());
-                            review.setRating(reqReview.getRating());
-                            return review;
-                        })
-                        .flatMap(reviewRepository::save))
-                .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview));*/
-        return existingReview
-                .flatMap(review -> request.bodyToMono(Review.class)
-                        .map(reqReview -> {
-                            review.setComment(reqReview.getComment());
-                            review.setRating(reqReview.getRating());
-                            return review;
-                        })
-                        .flatMap(reviewRepository::save))
+
+        // one findAndModify, concurrent updates no longer overwrite each other
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> reviewRepository.updateReview(reviewId, reqReview.getComment(), reqReview.getRating())
+                        .map(previousReview -> {
+                            var savedReview = new Review(previousReview.getReviewId(), previousReview.getMovieInfoId(),
+                                    reqReview.getComment(), reqReview.getRating());
+                            ratingSummaryService.onReviewUpdated(previousReview, savedReview);
+                            return savedReview;
+                        }))
                 .flatMap(savedReview -> ServerResponse.ok().bodyValue(savedReview))
                 .switchIfEmpty(ServerResponse.notFound().build());
 
@@ -141,18 +263,27 @@ public class ReviewHandler {
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         var reviewId = request.pathVariable("id");
-        var existingReview = reviewRepository.findById(reviewId);
 
-        return existingReview
-                .flatMap(review -> reviewRepository.deleteById(reviewId))
+        // one findAndRemove, the deleted review is only subtracted from the rating summary once
+        return reviewRepository.removeReview(reviewId)
+                .doOnNext(ratingSummaryService::onReviewRemoved)
                 .then(ServerResponse.noContent().build());
 
     }
 
+    /**
+     * With movieInfoId, only the reviews of that movie, from its partition.
+     * Without, every review since the start of the instance.
+     */
     public Mono<ServerResponse> getReviewsStream(ServerRequest request) {
+        var movieInfoId = request.queryParam("movieInfoId");
+
+        var reviewFlux = movieInfoId.isPresent()
+                ? reviewStreamPartitions.stream(Long.valueOf(movieInfoId.get()))
+                : reviewStreamPartitions.streamAll();
         return ServerResponse.ok()
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewSink.asFlux(), Review.class)
+                .body(reviewFlux, Review.class)
                 .log();
     }
 }
@@ -0,0 +1,124 @@
+package com.reactivespring.handler;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Review streams partitioned by movie: a review is only delivered to the subscribers of its movie.
+ * A partition is created by its first subscriber and replays the last reviews of its movie to the new subscribers.
+ * A partition left without subscribers is evicted after the idle timeout, reviews of movies without a partition are
+ * not kept.
+ * The stream of every review replays the last reviews of all the movies, bounded by the same replay size.
+ */
+@Component
+@Slf4j
+public class ReviewStreamPartitions {
+
+    private final int replaySize;
+    private final Duration idleTimeout;
+    private final ConcurrentHashMap<Long, Partition> partitions = new ConcurrentHashMap<>();
+    private final Partition allReviews;
+
+    private Disposable idleEviction;
+
+    public ReviewStreamPartitions(@Value("${reviews.stream.partition.replaySize:100}") int replaySize,
+                                  @Value("${reviews.stream.partition.idleTimeout:1m}") Duration idleTimeout) {
+        this.replaySize = replaySize;
+        this.idleTimeout = idleTimeout;
+        this.allReviews = new Partition(replaySize);
+    }
+
+    @PostConstruct
+    public void startIdleEviction() {
+        var checkInterval = idleTimeout.dividedBy(2);
+        idleEviction = Flux.interval(checkInterval.isZero() ? Duration.ofSeconds(1) : checkInterval)
+                .subscribe(tick -> evictIdlePartitions());
+    }
+
+    @PreDestroy
+    public void stopIdleEviction() {
+        if (idleEviction != null) {
+            idleEviction.dispose();
+        }
+    }
+
+    public void publish(Review review) {
+        allReviews.emit(review);
+        if (review.getMovieInfoId() == null) {
+            return;
+        }
+        var partition = partitions.get(review.getMovieInfoId());
+        if (partition != null) {
+            partition.emit(review);
+        }
+    }
+
+    public Flux<Review> stream(Long movieInfoId) {
+        return Flux.defer(() -> {
+            // subscribing under the map lock, so an eviction never completes a partition being subscribed to
+            var partition = partitions.compute(movieInfoId, (id, existing) -> {
+                var subscribed = existing != null ? existing : new Partition(replaySize);
+                subscribed.subscribers++;
+                return subscribed;
+            });
+            return partition.sink.asFlux()
+                    .doFinally(signal -> partitions.computeIfPresent(movieInfoId, (id, existing) -> {
+                        if (--existing.subscribers == 0) {
+                            existing.idleSince = System.nanoTime();
+                        }
+                        return existing;
+                    }));
+        });
+    }
+
+    public Flux<Review> streamAll() {
+        return allReviews.sink.asFlux();
+    }
+
+    void evictIdlePartitions() {
+        var now = System.nanoTime();
+        partitions.forEach((movieInfoId, partition) -> partitions.computeIfPresent(movieInfoId, (id, existing) -> {
+            if (existing.subscribers == 0 && now - existing.idleSince >= idleTimeout.toNanos()) {
+                log.debug("Evicting the idle review stream of the movie {}", id);
+                existing.complete();
+                return null;
+            }
+            return existing;
+        }));
+    }
+
+    int partitionCount() {
+        return partitions.size();
+    }
+
+    private static final class Partition {
+
+        private final Sinks.Many<Review> sink;
+        // guarded by the map lock of the partition
+        private int subscribers;
+        private long idleSince;
+
+        Partition(int replaySize) {
+            this.sink = Sinks.many().replay().limit(replaySize);
+        }
+
+        // reviews of the same movie may be saved concurrently
+        synchronized void emit(Review review) {
+            sink.tryEmitNext(review);
+        }
+
+        synchronized void complete() {
+            sink.tryEmitComplete();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Creates the indexes declared on {@link Review} once the application is ready, without delaying the startup,
+ * then explains the review queries and warns about the ones still scanning the whole collection: the reviews of a
+ * movie, the $in query of the batched lookups, and the keyset pages by rating or by id, of a movie or of every
+ * review. Index builds run in the background, so the collection stays readable and writable meanwhile.
+ */
+@Component
+@Slf4j
+public class MongoIndexInitializer {
+
+    private static final List<Class<?>> DOCUMENTS = List.of(Review.class);
+
+    // one query per query path of the repositories, the values do not matter
+    private static final List<QueryProbe> QUERY_PROBES = List.of(
+            new QueryProbe("ReviewRepository.findReviewsByMovieInfoId", Review.class,
+                    new Document("movieInfoId", 0L), new Document()),
+            new QueryProbe("ReviewRepository.findFirstReviews", Review.class,
+                    new Document("movieInfoId", new Document("$in", List.of(0L, 1L))),
+                    new Document("movieInfoId", 1).append("_id", 1)),
+            new QueryProbe("ReviewRepository.findReviewPage by rating", Review.class,
+                    new Document("movieInfoId", 0L).append("rating", new Document("$gt", 0.0)),
+                    new Document("rating", 1).append("_id", 1)),
+            new QueryProbe("ReviewRepository.findReviewPage by id", Review.class,
+                    new Document("movieInfoId", 0L).append("_id", new Document("$gt", "")), new Document("_id", 1)),
+            new QueryProbe("ReviewRepository.findReviewPage of every review by rating", Review.class,
+                    new Document("rating", new Document("$gt", 0.0)), new Document("rating", 1).append("_id", 1)));
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final boolean ensureIndexes;
+    private final boolean checkQueryPlans;
+
+    public MongoIndexInitializer(ReactiveMongoTemplate reactiveMongoTemplate,
+                                 @Value("${mongo.indexes.ensureOnStartup:true}") boolean ensureIndexes,
+                                 @Value("${mongo.indexes.checkQueryPlans:true}") boolean checkQueryPlans) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.ensureIndexes = ensureIndexes;
+        this.checkQueryPlans = checkQueryPlans;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        var indexes = ensureIndexes ? ensureIndexes() : Mono.<Void>empty();
+        var queryPlans = checkQueryPlans ? checkQueryPlans().then() : Mono.<Void>empty();
+        indexes.then(queryPlans)
+                .subscribe(null, error -> log.warn("Index initialization failed", error));
+    }
+
+    public Mono<Void> ensureIndexes() {
+        var indexResolver = IndexResolver.create(reactiveMongoTemplate.getConverter().getMappingContext());
+        return Flux.fromIterable(DOCUMENTS)
+                .concatMap(document -> Flux.fromIterable(indexResolver.resolveIndexFor(document))
+                        .concatMap(index -> reactiveMongoTemplate.indexOps(document).ensureIndex(index))
+                        .doOnNext(name -> log.info("Index {} ensured on {}", name,
+                                reactiveMongoTemplate.getCollectionName(document))))
+                .then();
+    }
+
+    /**
+     * Emits the names of the queries answered by a collection scan.
+     */
+    public Flux<String> checkQueryPlans() {
+        return Flux.fromIterable(QUERY_PROBES)
+                .concatMap(probe -> reactiveMongoTemplate.executeCommand(probe.explainCommand(
+                                reactiveMongoTemplate.getCollectionName(probe.document)))
+                        .filter(explain -> hasStage(explain.get("queryPlanner", Document.class)
+                                .get("winningPlan", Document.class), "COLLSCAN"))
+                        .map(explain -> probe.name))
+                .doOnNext(name -> log.warn("{} runs a collection scan, an index is missing", name));
+    }
+
+    static boolean hasStage(Document plan, String stage) {
+        if (plan == null) {
+            return false;
+        }
+        if (stage.equals(plan.getString("stage"))) {
+            return true;
+        }
+        if (hasStage(plan.get("inputStage", Document.class), stage)) {
+            return true;
+        }
+        return plan.getList("inputStages", Document.class, List.of()).stream()
+                .anyMatch(inputStage -> hasStage(inputStage, stage));
+    }
+
+    private static final class QueryProbe {
+
+        private final String name;
+        private final Class<?> document;
+        private final Document filter;
+        private final Document sort;
+
+        QueryProbe(String name, Class<?> document, Document filter, Document sort) {
+            this.name = name;
+            this.document = document;
+            this.filter = filter;
+            this.sort = sort;
+        }
+
+        Document explainCommand(String collection) {
+            var find = new Document("find", collection)
+                    .append("filter", filter)
+                    .append("sort", sort);
+            return new Document("explain", find)
+                    .append("verbosity", "queryPlanner");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+public interface ReviewPageRepository {
+
+    /**
+     * Keyset pagination: at most limit reviews in the sort order, optionally of one movie, starting after the cursor
+     * (from the first review when null). Each page seeks into the index instead of skipping the previous pages.
+     */
+    Flux<Review> findReviewPage(Long movieInfoId, ReviewSort sort, ReviewCursor after, int limit);
+
+    /**
+     * The first reviews by id of each movie, at most limitPerMovie per movie, grouped by movie in ascending order.
+     * One $in query ordered by movie then id, cancelled and restarted with the following movies whenever a movie
+     * reaches the limit, so the reviews beyond the limit are never read.
+     */
+    Flux<Review> findFirstReviews(Collection<Long> movieInfoIds, int limitPerMovie);
+}
@@ -0,0 +1,130 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewCursor;
+import com.reactivespring.domain.ReviewSort;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReviewPageRepositoryImpl implements ReviewPageRepository {
+
+    private static final int STRING = 2;
+    private static final int OBJECT_ID = 7;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewPageRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Review> findReviewPage(Long movieInfoId, ReviewSort sort, ReviewCursor after, int limit) {
+        var query = new Query();
+        if (after == null) {
+            if (movieInfoId != null) {
+                query.addCriteria(Criteria.where("movieInfoId").is(movieInfoId));
+            }
+        } else {
+            // one branch per index range, so each one is an index seek and the branches are merged in sort order
+            var branches = new ArrayList<Criteria>();
+            for (var idRange : idRangesAfter(sort.getDirection(), after.getReviewId())) {
+                // within the rating of the cursor, the ids after the one of the cursor
+                var rating = sort.byRating() ? Criteria.where("rating").is(after.getRating()) : null;
+                branches.add(branch(movieInfoId, rating, idRange));
+            }
+            if (sort.byRating()) {
+                for (var ratingRange : ratingRangesAfter(sort.getDirection(), after.getRating())) {
+                    branches.add(branch(movieInfoId, ratingRange, null));
+                }
+            }
+            query.addCriteria(new Criteria().orOperator(branches.toArray(new Criteria[0])));
+        }
+        return reactiveMongoTemplate.find(query.with(sort.toSort()).limit(limit), Review.class);
+    }
+
+    @Override
+    public Flux<Review> findFirstReviews(Collection<Long> movieInfoIds, int limitPerMovie) {
+        return findFirstReviews(new TreeSet<>(movieInfoIds), limitPerMovie);
+    }
+
+    private Flux<Review> findFirstReviews(NavigableSet<Long> movieInfoIds, int limitPerMovie) {
+        if (movieInfoIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> {
+            var currentMovieInfoId = new AtomicReference<Long>();
+            var count = new AtomicInteger();
+            var query = new Query(Criteria.where("movieInfoId").in(movieInfoIds))
+                    .with(Sort.by("movieInfoId", "reviewId"));
+            return reactiveMongoTemplate.find(query, Review.class)
+                    .takeUntil(review -> {
+                        if (!review.getMovieInfoId().equals(currentMovieInfoId.get())) {
+                            currentMovieInfoId.set(review.getMovieInfoId());
+                            count.set(0);
+                        }
+                        return count.incrementAndGet() == limitPerMovie;
+                    })
+                    // the current movie reached the limit, the following ones are read by a new query
+                    .concatWith(Flux.defer(() -> count.get() == limitPerMovie
+                            ? findFirstReviews(movieInfoIds.tailSet(currentMovieInfoId.get(), false), limitPerMovie)
+                            : Flux.empty()));
+        });
+    }
+
+    /*
+     * The ratings after the one of the cursor: the greater ratings, or the lower ones then no rating when descending.
+     * A range operator only matches numbers, reviews without a rating need their own range.
+     */
+    private static List<Criteria> ratingRangesAfter(Sort.Direction direction, Double rating) {
+        if (direction == Sort.Direction.ASC) {
+            return List.of(rating == null
+                    ? Criteria.where("rating").ne(null)
+                    : Criteria.where("rating").gt(rating));
+        }
+        return rating == null
+                ? List.of()
+                : List.of(Criteria.where("rating").lt(rating), Criteria.where("rating").is(null));
+    }
+
+    /*
+     * Ids are either ObjectIds (generated) or strings (assigned), and a range operator only matches its own type.
+     * Strings sort before ObjectIds.
+     */
+    private static List<Criteria> idRangesAfter(Sort.Direction direction, String reviewId) {
+        var objectId = ObjectId.isValid(reviewId);
+        if (direction == Sort.Direction.ASC) {
+            return objectId
+                    ? List.of(Criteria.where("reviewId").gt(reviewId))
+                    : List.of(Criteria.where("reviewId").gt(reviewId), Criteria.where("reviewId").type(OBJECT_ID));
+        }
+        return objectId
+                ? List.of(Criteria.where("reviewId").lt(reviewId), Criteria.where("reviewId").type(STRING))
+                : List.of(Criteria.where("reviewId").lt(reviewId));
+    }
+
+    private static Criteria branch(Long movieInfoId, Criteria rating, Criteria id) {
+        var parts = new ArrayList<Criteria>();
+        if (movieInfoId != null) {
+            parts.add(Criteria.where("movieInfoId").is(movieInfoId));
+        }
+        if (rating != null) {
+            parts.add(rating);
+        }
+        if (id != null) {
+            parts.add(id);
+        }
+        return new Criteria().andOperator(parts.toArray(new Criteria[0]));
+    }
+}
@@ -6,7 +6,8 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
 @Repository
-public interface ReviewRepository extends ReactiveMongoRepository<Review, String> {
+public interface ReviewRepository extends ReactiveMongoRepository<Review, String>, ReviewUpdateRepository,
+        ReviewPageRepository {
 
     Flux<Review> findReviewsByMovieInfoId(Long movieInfoId);
 }
@@ -0,0 +1,19 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import reactor.core.publisher.Mono;
+
+public interface ReviewUpdateRepository {
+
+    /**
+     * Sets the comment and the rating in a single findAndModify, returning the review as it was before the update.
+     * Empty when there is no review for the id.
+     */
+    Mono<Review> updateReview(String reviewId, String comment, Double rating);
+
+    /**
+     * Deletes the review in a single findAndRemove, returning the deleted review.
+     * Empty when there is no review for the id.
+     */
+    Mono<Review> removeReview(String reviewId);
+}
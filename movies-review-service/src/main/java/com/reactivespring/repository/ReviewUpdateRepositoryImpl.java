@@ -0,0 +1,34 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+public class ReviewUpdateRepositoryImpl implements ReviewUpdateRepository {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    public ReviewUpdateRepositoryImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<Review> updateReview(String reviewId, String comment, Double rating) {
+        var update = new Update()
+                .set("comment", comment)
+                .set("rating", rating);
+
+        // the previous rating is needed to update the rating summary
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("reviewId").is(reviewId)), update,
+                FindAndModifyOptions.options().returnNew(false), Review.class);
+    }
+
+    @Override
+    public Mono<Review> removeReview(String reviewId) {
+        return reactiveMongoTemplate.findAndRemove(Query.query(Criteria.where("reviewId").is(reviewId)), Review.class);
+    }
+}
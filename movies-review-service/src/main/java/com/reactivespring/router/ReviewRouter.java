@@ -1,5 +1,6 @@
 package com.reactivespring.router;
 
+import com.reactivespring.handler.RatingSummaryHandler;
 import com.reactivespring.handler.ReviewHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,7 +14,8 @@ import static org.springframework.web.reactive.function.server.RouterFunctions.r
 public class ReviewRouter {
 
     @Bean
-    public RouterFunction<ServerResponse> reviewsRouter(ReviewHandler reviewHandler) {
+    public RouterFunction<ServerResponse> reviewsRouter(ReviewHandler reviewHandler,
+                                                        RatingSummaryHandler ratingSummaryHandler) {
 
        /* return route()
                 .GET("/v1/helloworld", (request -> ServerResponse.ok().bodyValue("hello world")))
@@ -24,11 +26,14 @@ public class ReviewRouter {
 
         return route()
                 .nest(path("/v1/reviews"), builder -> {
-                    builder.POST(reviewHandler::addReview)
+                    // the routes without a path match every path, the routes with one come first
+                    builder.GET("/stream", reviewHandler::getReviewsStream)
+                            .GET("/summary/{movieInfoId}", ratingSummaryHandler::getRatingSummary)
+                            .POST("/summary/rebuild", ratingSummaryHandler::rebuildRatingSummaries)
+                            .POST(reviewHandler::addReview)
                             .GET(reviewHandler::getReviews)
                             .PUT("/{id}", reviewHandler::updateReview)
-                            .DELETE("/{id}", reviewHandler::deleteReview)
-                            .GET("/stream", reviewHandler::getReviewsStream);
+                            .DELETE("/{id}", reviewHandler::deleteReview);
                 })
                 .GET("/v1/helloworld", (request -> ServerResponse.ok().bodyValue("hello world")))
                 /*.POST("/v1/reviews", request -> reviewHandler.addReview(request))
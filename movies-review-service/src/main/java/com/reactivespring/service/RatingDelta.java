@@ -0,0 +1,169 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.RatingSummary;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rating changes of one movie not yet written to its summary.
+ * The adders are striped, so concurrent reviews of a popular movie do not contend on a single counter, and draining
+ * them never loses a concurrent change: it lands either in this drain or in the next one.
+ * A drained change is neither here nor in the stored summary until its flush is written, so a read tells from the
+ * flushes started meanwhile whether it has to read again.
+ */
+class RatingDelta {
+
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final LongAdder[] histogram = new LongAdder[RatingSummary.MAX_BUCKET + 1];
+    private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+    // a removed rating may have been the min or the max
+    private final AtomicBoolean removals = new AtomicBoolean();
+
+    // guarded by this
+    private long flushesStarted;
+    // completes when the flush in flight has been written, null when no flush is in flight
+    private Sinks.Empty<Void> flushInFlight;
+
+    RatingDelta() {
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    void add(double rating) {
+        count.increment();
+        sum.add(rating);
+        histogram[RatingSummary.bucket(rating)].increment();
+        min.accumulate(rating);
+        max.accumulate(rating);
+    }
+
+    void remove(double rating) {
+        count.decrement();
+        sum.add(-rating);
+        histogram[RatingSummary.bucket(rating)].decrement();
+        removals.set(true);
+    }
+
+    /**
+     * The pending changes, as a summary of differences, without draining them.
+     */
+    Snapshot snapshot() {
+        var histogramCounts = new long[histogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogramCounts[i] = histogram[i].sum();
+        }
+        return new Snapshot(count.sum(), sum.sum(), histogramCounts, min.get(), max.get(), removals.get());
+    }
+
+    /**
+     * Drains the pending changes for a flush, null when there is nothing to write or a flush is still in flight.
+     */
+    synchronized Snapshot startFlush() {
+        if (flushInFlight != null) {
+            return null;
+        }
+        var snapshot = drain();
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+        flushesStarted++;
+        flushInFlight = Sinks.empty();
+        return snapshot;
+    }
+
+    synchronized void endFlush() {
+        if (flushInFlight != null) {
+            flushInFlight.tryEmitEmpty();
+            flushInFlight = null;
+        }
+    }
+
+    synchronized long flushesStarted() {
+        return flushesStarted;
+    }
+
+    // completes once the flush in flight has been written, null when no flush is in flight
+    synchronized Mono<Void> flushInFlight() {
+        return flushInFlight != null ? flushInFlight.asMono() : null;
+    }
+
+    /**
+     * The pending changes, null when a flush started since the given count, the stored summary may then miss them.
+     */
+    synchronized Snapshot snapshotIfNoFlushSince(long flushes) {
+        return flushesStarted == flushes && flushInFlight == null ? snapshot() : null;
+    }
+
+    synchronized boolean isIdle() {
+        return flushInFlight == null && snapshot().isEmpty();
+    }
+
+    Snapshot drain() {
+        var histogramCounts = new long[histogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogramCounts[i] = histogram[i].sumThenReset();
+        }
+        return new Snapshot(count.sumThenReset(), sum.sumThenReset(), histogramCounts, min.getThenReset(),
+                max.getThenReset(), removals.getAndSet(false));
+    }
+
+    void markRemovals() {
+        removals.set(true);
+    }
+
+    /**
+     * Puts back a drained snapshot which could not be written.
+     */
+    void restore(Snapshot snapshot) {
+        count.add(snapshot.count);
+        sum.add(snapshot.sum);
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i].add(snapshot.histogram[i]);
+        }
+        min.accumulate(snapshot.min);
+        max.accumulate(snapshot.max);
+        if (snapshot.removals) {
+            removals.set(true);
+        }
+    }
+
+    static final class Snapshot {
+
+        final long count;
+        final double sum;
+        final long[] histogram;
+        // infinite when no rating was added
+        final double min;
+        final double max;
+        final boolean removals;
+
+        Snapshot(long count, double sum, long[] histogram, double min, double max, boolean removals) {
+            this.count = count;
+            this.sum = sum;
+            this.histogram = histogram;
+            this.min = min;
+            this.max = max;
+            this.removals = removals;
+        }
+
+        boolean isEmpty() {
+            if (count != 0 || sum != 0 || removals || !Double.isInfinite(min)) {
+                return false;
+            }
+            for (var bucketCount : histogram) {
+                if (bucketCount != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
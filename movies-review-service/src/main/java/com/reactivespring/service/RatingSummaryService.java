@@ -0,0 +1,303 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.RatingSummary;
+import com.reactivespring.domain.Review;
+import com.reactivespring.repository.RatingSummaryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rating summaries (count, sum, min, max and histogram) per movie, kept up to date as reviews are added, updated
+ * and deleted, so reading one costs a single lookup instead of reading every review.
+ * Changes accumulate in memory and are written every flush interval, one atomic upsert per changed movie.
+ * A summary read adds the changes of this instance not written yet, waiting for a flush being written.
+ * Changes not written when the instance dies are lost, {@link #rebuild()} recomputes the summaries from the reviews.
+ */
+@Service
+@Slf4j
+public class RatingSummaryService {
+
+    private static final int MAX_READ_ATTEMPTS = 10;
+
+    private final RatingSummaryRepository ratingSummaryRepository;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final Duration flushInterval;
+    // one delta per movie with changes pending or being written, changed and removed under the map lock of the movie,
+    // so no change can land in a removed delta
+    private final ConcurrentHashMap<Long, RatingDelta> deltas = new ConcurrentHashMap<>();
+
+    private Disposable flushes;
+
+    public RatingSummaryService(RatingSummaryRepository ratingSummaryRepository,
+                                ReactiveMongoTemplate reactiveMongoTemplate,
+                                @Value("${reviews.summary.flushInterval:1s}") Duration flushInterval) {
+        this.ratingSummaryRepository = ratingSummaryRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.flushInterval = flushInterval;
+    }
+
+    @PostConstruct
+    public void startFlushes() {
+        flushes = Flux.interval(flushInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush(), 1)
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stopFlushes() {
+        if (flushes != null) {
+            flushes.dispose();
+        }
+        flush().block(Duration.ofSeconds(10));
+    }
+
+    public void onReviewAdded(Review review) {
+        if (review.getMovieInfoId() != null && review.getRating() != null) {
+            deltas.compute(review.getMovieInfoId(), (id, delta) -> {
+                var changed = delta != null ? delta : new RatingDelta();
+                changed.add(review.getRating());
+                return changed;
+            });
+        }
+    }
+
+    public void onReviewUpdated(Review previousReview, Review updatedReview) {
+        onReviewRemoved(previousReview);
+        onReviewAdded(updatedReview);
+    }
+
+    public void onReviewRemoved(Review review) {
+        if (review.getMovieInfoId() != null && review.getRating() != null) {
+            deltas.compute(review.getMovieInfoId(), (id, delta) -> {
+                var changed = delta != null ? delta : new RatingDelta();
+                changed.remove(review.getRating());
+                return changed;
+            });
+        }
+    }
+
+    /**
+     * The stored summary plus the changes not written yet. A flush drains the changes before writing them, so a read
+     * overlapping a flush could miss them or count them twice: it waits for the flush, then reads again.
+     */
+    public Mono<RatingSummary> getRatingSummary(Long movieInfoId) {
+        return Mono.defer(() -> {
+                    var delta = deltas.get(movieInfoId);
+                    if (delta == null) {
+                        return findRatingSummary(movieInfoId);
+                    }
+                    var flushes = delta.flushesStarted();
+                    var flushInFlight = delta.flushInFlight();
+                    if (flushInFlight != null) {
+                        return flushInFlight.then(Mono.<RatingSummary>empty());
+                    }
+                    return findRatingSummary(movieInfoId)
+                            .flatMap(ratingSummary -> {
+                                var snapshot = delta.snapshotIfNoFlushSince(flushes);
+                                // flushed or removed meanwhile
+                                if (snapshot == null || deltas.get(movieInfoId) != delta) {
+                                    return Mono.empty();
+                                }
+                                return Mono.just(withPendingChanges(ratingSummary, snapshot));
+                            });
+                })
+                .repeatWhenEmpty(MAX_READ_ATTEMPTS, attempts -> attempts);
+    }
+
+    private Mono<RatingSummary> findRatingSummary(Long movieInfoId) {
+        return ratingSummaryRepository.findById(movieInfoId)
+                .defaultIfEmpty(new RatingSummary(movieInfoId, 0, 0, null, null, emptyHistogram()));
+    }
+
+    private static RatingSummary withPendingChanges(RatingSummary ratingSummary, RatingDelta.Snapshot snapshot) {
+        ratingSummary.setCount(ratingSummary.getCount() + snapshot.count);
+        ratingSummary.setSum(ratingSummary.getSum() + snapshot.sum);
+        var histogram = ratingSummary.getHistogram() != null ? ratingSummary.getHistogram() : emptyHistogram();
+        for (int bucket = 0; bucket < snapshot.histogram.length; bucket++) {
+            histogram.merge(String.valueOf(bucket), snapshot.histogram[bucket], Long::sum);
+        }
+        ratingSummary.setHistogram(histogram);
+        if (!Double.isInfinite(snapshot.min)) {
+            ratingSummary.setMin(ratingSummary.getMin() != null
+                    ? Math.min(ratingSummary.getMin(), snapshot.min) : snapshot.min);
+            ratingSummary.setMax(ratingSummary.getMax() != null
+                    ? Math.max(ratingSummary.getMax(), snapshot.max) : snapshot.max);
+        }
+        return ratingSummary;
+    }
+
+    /**
+     * Writes the pending changes. A change which could not be written is kept for the next flush.
+     */
+    public Mono<Void> flush() {
+        return Flux.fromIterable(deltas.entrySet())
+                .concatMap(entry -> flush(entry.getKey(), entry.getValue()))
+                .then();
+    }
+
+    private Mono<Void> flush(Long movieInfoId, RatingDelta delta) {
+        var snapshot = delta.startFlush();
+        if (snapshot == null) {
+            removeIfIdle(movieInfoId);
+            return Mono.empty();
+        }
+        var update = new Update()
+                .inc("count", snapshot.count)
+                .inc("sum", snapshot.sum);
+        // every bucket, emptied ones included, so the histogram always holds the buckets 0 to MAX_BUCKET
+        for (int bucket = 0; bucket < snapshot.histogram.length; bucket++) {
+            update.inc("histogram." + bucket, snapshot.histogram[bucket]);
+        }
+        if (!Double.isInfinite(snapshot.min)) {
+            update.min("min", snapshot.min)
+                    .max("max", snapshot.max);
+        }
+
+        var upsert = reactiveMongoTemplate.upsert(Query.query(Criteria.where("_id").is(movieInfoId)), update,
+                        summaryCollection())
+                .then()
+                .onErrorResume(ex -> {
+                    log.warn("Rating summary of the movie {} not written, retrying at the next flush: {}",
+                            movieInfoId, ex.getMessage());
+                    delta.restore(snapshot);
+                    return Mono.empty();
+                });
+        // a removed rating may have been the min or the max
+        return (snapshot.removals ? upsert.then(recomputeMinMax(movieInfoId, delta)) : upsert)
+                .doFinally(signal -> {
+                    delta.endFlush();
+                    removeIfIdle(movieInfoId);
+                });
+    }
+
+    private void removeIfIdle(Long movieInfoId) {
+        deltas.computeIfPresent(movieInfoId, (id, delta) -> delta.isIdle() ? null : delta);
+    }
+
+    private Mono<Void> recomputeMinMax(Long movieInfoId, RatingDelta delta) {
+        return Mono.zip(extremeRating(movieInfoId, Sort.Direction.ASC), extremeRating(movieInfoId, Sort.Direction.DESC))
+                .flatMap(extremes -> {
+                    var update = new Update();
+                    if (extremes.getT1().isPresent()) {
+                        update.set("min", extremes.getT1().get())
+                                .set("max", extremes.getT2().get());
+                    } else {
+                        update.unset("min")
+                                .unset("max");
+                    }
+                    return reactiveMongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(movieInfoId)),
+                            update, summaryCollection());
+                })
+                .then()
+                .onErrorResume(ex -> {
+                    log.warn("Rating range of the movie {} not recomputed, retrying at the next flush: {}",
+                            movieInfoId, ex.getMessage());
+                    delta.markRemovals();
+                    return Mono.empty();
+                });
+    }
+
+    // served by the (movieInfoId, rating) index
+    private Mono<Optional<Double>> extremeRating(Long movieInfoId, Sort.Direction direction) {
+        var query = Query.query(Criteria.where("movieInfoId").is(movieInfoId).and("rating").ne(null))
+                .with(Sort.by(direction, "rating"))
+                .limit(1);
+        return reactiveMongoTemplate.findOne(query, Review.class)
+                .map(review -> Optional.of(review.getRating()))
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    /**
+     * Recomputes every summary from the reviews and deletes the summaries of movies without rated reviews.
+     * Reviews written while it runs may be counted twice or not at all, run it when reviews are not being written.
+     */
+    public Mono<Long> rebuild() {
+        Set<Long> rebuilt = ConcurrentHashMap.newKeySet();
+        return flush()
+                .thenMany(reactiveMongoTemplate.aggregate(ratingsPerBucket(),
+                        reactiveMongoTemplate.getCollectionName(Review.class), Document.class))
+                .bufferUntilChanged(bucket -> bucket.get("_id", Document.class).get("movieInfoId"))
+                .map(RatingSummaryService::toRatingSummary)
+                .concatMap(ratingSummary -> {
+                    rebuilt.add(ratingSummary.getMovieInfoId());
+                    return ratingSummaryRepository.save(ratingSummary);
+                })
+                .count()
+                .flatMap(count -> ratingSummaryRepository.findAll()
+                        .filter(ratingSummary -> !rebuilt.contains(ratingSummary.getMovieInfoId()))
+                        .concatMap(ratingSummaryRepository::delete)
+                        .then(Mono.just(count)))
+                .doOnNext(count -> log.info("{} rating summaries rebuilt", count));
+    }
+
+    // count, sum, min and max of the ratings per movie and bucket, sorted by movie
+    private static Aggregation ratingsPerBucket() {
+        var bucket = new Document("$min", List.of(RatingSummary.MAX_BUCKET,
+                new Document("$max", List.of(0, new Document("$floor", "$rating")))));
+        List<AggregationOperation> operations = List.of(
+                context -> new Document("$match", new Document("movieInfoId", new Document("$ne", null))
+                        .append("rating", new Document("$ne", null))),
+                context -> new Document("$group", new Document("_id",
+                        new Document("movieInfoId", "$movieInfoId").append("bucket", bucket))
+                        .append("count", new Document("$sum", 1))
+                        .append("sum", new Document("$sum", "$rating"))
+                        .append("min", new Document("$min", "$rating"))
+                        .append("max", new Document("$max", "$rating"))),
+                context -> new Document("$sort", new Document("_id.movieInfoId", 1)));
+        return Aggregation.newAggregation(operations)
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+    }
+
+    private static RatingSummary toRatingSummary(List<Document> buckets) {
+        var ratingSummary = new RatingSummary();
+        ratingSummary.setHistogram(emptyHistogram());
+        for (var bucket : buckets) {
+            var id = bucket.get("_id", Document.class);
+            var count = ((Number) bucket.get("count")).longValue();
+            var min = ((Number) bucket.get("min")).doubleValue();
+            var max = ((Number) bucket.get("max")).doubleValue();
+            ratingSummary.setMovieInfoId(((Number) id.get("movieInfoId")).longValue());
+            ratingSummary.setCount(ratingSummary.getCount() + count);
+            ratingSummary.setSum(ratingSummary.getSum() + ((Number) bucket.get("sum")).doubleValue());
+            ratingSummary.getHistogram().put(String.valueOf(((Number) id.get("bucket")).intValue()), count);
+            ratingSummary.setMin(ratingSummary.getMin() != null ? Math.min(ratingSummary.getMin(), min) : min);
+            ratingSummary.setMax(ratingSummary.getMax() != null ? Math.max(ratingSummary.getMax(), max) : max);
+        }
+        return ratingSummary;
+    }
+
+    private static Map<String, Long> emptyHistogram() {
+        var histogram = new HashMap<String, Long>();
+        for (int bucket = 0; bucket <= RatingSummary.MAX_BUCKET; bucket++) {
+            histogram.put(String.valueOf(bucket), 0L);
+        }
+        return histogram;
+    }
+
+    private String summaryCollection() {
+        return reactiveMongoTemplate.getCollectionName(RatingSummary.class);
+    }
+}
@@ -0,0 +1,271 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSort;
+import com.reactivespring.repository.ReviewRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.ConnectableFlux;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Batches the lookups of the first reviews of a movie by id: the lookups arriving within the batch window, or until
+ * the batch holds the max batch size movies, are read with one $in query ordered by movie then id, and the reviews
+ * are dispatched to the lookups of their movie. Lookups of the same movie in a batch share its reviews.
+ * The query stops reading a movie once it reached the largest limit of the batch and is restarted after it, so the
+ * reviews of a movie beyond the limit are never read.
+ * The query is read with backpressure: the lookups of a batch consume it at the pace of the slowest one, through a
+ * bounded queue, and it is cancelled once they are all gone. A batch of a single movie reads a single movie page.
+ * A zero window disables the batching, every lookup then runs its own query.
+ */
+@Component
+public class ReviewBatchLoader {
+
+    private final ReviewRepository reviewRepository;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Scheduler scheduler;
+    private final DistributionSummary batchFill;
+    private final Timer queueingDelay;
+
+    // guarded by this
+    private Map<Long, List<Lookup>> pending = new LinkedHashMap<>();
+    private Disposable scheduledDispatch;
+
+    public ReviewBatchLoader(ReviewRepository reviewRepository, MeterRegistry meterRegistry,
+                             @Value("${reviews.lookup.batch.window:2ms}") Duration window,
+                             @Value("${reviews.lookup.batch.maxSize:100}") int maxBatchSize) {
+        this(reviewRepository, meterRegistry, window, maxBatchSize, Schedulers.parallel());
+    }
+
+    ReviewBatchLoader(ReviewRepository reviewRepository, MeterRegistry meterRegistry, Duration window,
+                      int maxBatchSize, Scheduler scheduler) {
+        this.reviewRepository = reviewRepository;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.batchFill = DistributionSummary.builder("reviews.lookup.batch.fill")
+                .description("Movies per batch over the max batch size")
+                .register(meterRegistry);
+        this.queueingDelay = Timer.builder("reviews.lookup.batch.delay")
+                .description("Time a lookup waits for its batch to be dispatched")
+                .register(meterRegistry);
+    }
+
+    /**
+     * The first reviews of the movie ordered by id, at most limit of them.
+     */
+    public Flux<Review> findReviewsByMovieInfoId(Long movieInfoId, int limit) {
+        if (window.isZero()) {
+            return reviewRepository.findReviewPage(movieInfoId, ReviewSort.ID, null, limit);
+        }
+        return Flux.defer(() -> {
+            var lookup = new Lookup(limit);
+            enqueue(movieInfoId, lookup);
+            return lookup.reviews.asMono()
+                    .flatMapMany(Function.identity())
+                    .doOnCancel(lookup::cancel);
+        });
+    }
+
+    private void enqueue(Long movieInfoId, Lookup lookup) {
+        Map<Long, List<Lookup>> batch = null;
+        synchronized (this) {
+            pending.computeIfAbsent(movieInfoId, id -> new ArrayList<>()).add(lookup);
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (scheduledDispatch == null) {
+                scheduledDispatch = scheduler.schedule(this::dispatchPending, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    private void dispatchPending() {
+        Map<Long, List<Lookup>> batch;
+        synchronized (this) {
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    // called holding the lock
+    private Map<Long, List<Lookup>> takePending() {
+        var batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledDispatch != null) {
+            scheduledDispatch.dispose();
+            scheduledDispatch = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Map<Long, List<Lookup>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        var now = System.nanoTime();
+        batch.values().forEach(lookups -> lookups.forEach(lookup ->
+                queueingDelay.record(now - lookup.enqueuedAt, TimeUnit.NANOSECONDS)));
+        batchFill.record((double) batch.size() / maxBatchSize);
+
+        var lookupCount = batch.values().stream().mapToInt(List::size).sum();
+        if (lookupCount == 1) {
+            // nothing to share, the lookup reads its own query
+            var movieInfoId = batch.keySet().iterator().next();
+            var lookup = batch.get(movieInfoId).get(0);
+            lookup.reviews
+                    .tryEmitValue(reviewRepository.findReviewPage(movieInfoId, ReviewSort.ID, null, lookup.limit));
+            return;
+        }
+
+        var limit = batch.values().stream()
+                .flatMap(List::stream)
+                .mapToInt(lookup -> lookup.limit)
+                .max()
+                .orElseThrow();
+        var reviewFlux = batch.size() == 1
+                ? reviewRepository.findReviewPage(batch.keySet().iterator().next(), ReviewSort.ID, null, limit)
+                : reviewRepository.findFirstReviews(batch.keySet(), limit);
+        var sharedQuery = new SharedQuery(reviewFlux.publish(), lookupCount);
+        batch.forEach((movieInfoId, lookups) -> lookups.forEach(lookup -> {
+            lookup.assign(sharedQuery);
+            lookup.reviews.tryEmitValue(sharedQuery.reviewsOf(movieInfoId, lookup));
+        }));
+    }
+
+    /**
+     * The query of a batch, shared by its lookups. It is read as fast as the slowest lookup consumes, through the
+     * bounded queue of publish, connected once every lookup of the batch has either subscribed or been cancelled,
+     * and cancelled once every subscribed lookup is gone. It is never run when all the lookups were cancelled.
+     */
+    private static final class SharedQuery {
+
+        private final ConnectableFlux<Review> reviews;
+
+        // guarded by this
+        private int unsettledLookups;
+        private int liveLookups;
+        private Disposable connection;
+
+        SharedQuery(ConnectableFlux<Review> reviews, int lookups) {
+            this.reviews = reviews;
+            this.unsettledLookups = lookups;
+        }
+
+        Flux<Review> reviewsOf(Long movieInfoId, Lookup lookup) {
+            var movieReviews = reviews
+                    .filter(review -> movieInfoId.equals(review.getMovieInfoId()))
+                    .take(lookup.limit)
+                    .doOnSubscribe(subscription -> enter())
+                    .doFinally(signal -> leave());
+            return Flux.<Review>from(subscriber -> {
+                if (!lookup.join()) {
+                    // cancelled meanwhile, settled by the cancellation
+                    Operators.complete(subscriber);
+                    return;
+                }
+                movieReviews.subscribe(subscriber);
+                // publish only registers the subscriber once its onSubscribe returned
+                settle();
+            });
+        }
+
+        private synchronized void enter() {
+            liveLookups++;
+        }
+
+        private void leave() {
+            Disposable finished;
+            synchronized (this) {
+                finished = --liveLookups == 0 ? connection : null;
+            }
+            if (finished != null) {
+                finished.dispose();
+            }
+        }
+
+        void settle() {
+            synchronized (this) {
+                if (--unsettledLookups > 0 || liveLookups == 0) {
+                    return;
+                }
+            }
+            var newConnection = reviews.connect();
+            boolean abandoned;
+            synchronized (this) {
+                connection = newConnection;
+                abandoned = liveLookups == 0;
+            }
+            if (abandoned) {
+                newConnection.dispose();
+            }
+        }
+    }
+
+    private static final class Lookup {
+
+        // the reviews of the lookup, once its batch is dispatched
+        private final Sinks.One<Flux<Review>> reviews = Sinks.one();
+        private final int limit;
+        private final long enqueuedAt = System.nanoTime();
+
+        // guarded by this
+        private SharedQuery sharedQuery;
+        private boolean joined;
+        private boolean cancelled;
+
+        Lookup(int limit) {
+            this.limit = limit;
+        }
+
+        void assign(SharedQuery sharedQuery) {
+            boolean alreadyCancelled;
+            synchronized (this) {
+                this.sharedQuery = sharedQuery;
+                alreadyCancelled = cancelled;
+            }
+            if (alreadyCancelled) {
+                sharedQuery.settle();
+            }
+        }
+
+        synchronized boolean join() {
+            joined = !cancelled;
+            return joined;
+        }
+
+        void cancel() {
+            SharedQuery assigned;
+            synchronized (this) {
+                if (joined || cancelled) {
+                    return;
+                }
+                cancelled = true;
+                assigned = sharedQuery;
+            }
+            // a lookup cancelled before its dispatch is settled by the dispatch
+            if (assigned != null) {
+                assigned.settle();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataMongoTest
+@ActiveProfiles("test")
+class MongoIndexInitializerIntgTest {
+
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // only the _id index, the query plans of an empty collection are not scans
+        reactiveMongoTemplate.dropCollection(Review.class)
+                .then(reactiveMongoTemplate.insert(new Review(null, 1L, "Awesome Movie", 9.0)))
+                .block();
+    }
+
+    @Test
+    void checkQueryPlans_missingIndexes() {
+        var mongoIndexInitializer = new MongoIndexInitializer(reactiveMongoTemplate, true, true);
+
+        var scans = mongoIndexInitializer.checkQueryPlans().collectList().block();
+
+        assertTrue(scans.contains("ReviewRepository.findReviewsByMovieInfoId"), "scans: " + scans);
+        assertTrue(scans.contains("ReviewRepository.findFirstReviews"), "scans: " + scans);
+        assertTrue(scans.contains("ReviewRepository.findReviewPage of every review by rating"), "scans: " + scans);
+    }
+
+    @Test
+    void ensureIndexes() {
+        var mongoIndexInitializer = new MongoIndexInitializer(reactiveMongoTemplate, true, true);
+
+        mongoIndexInitializer.ensureIndexes().block();
+
+        var indexNames = reactiveMongoTemplate.indexOps(Review.class)
+                .getIndexInfo()
+                .map(IndexInfo::getName)
+                .collectList()
+                .block();
+        assertTrue(indexNames.contains("movieInfoId_rating_id"), "indexes: " + indexNames);
+        assertTrue(indexNames.contains("movieInfoId_id"), "indexes: " + indexNames);
+        assertTrue(indexNames.contains("rating_id"), "indexes: " + indexNames);
+
+        StepVerifier.create(mongoIndexInitializer.checkQueryPlans())
+                .verifyComplete();
+    }
+}
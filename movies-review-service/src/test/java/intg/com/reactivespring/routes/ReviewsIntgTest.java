@@ -1,21 +1,30 @@
 package com.reactivespring.routes;
 
+import com.reactivespring.domain.RatingSummary;
 import com.reactivespring.domain.Review;
 import com.reactivespring.repository.ReviewRepository;
+import com.reactivespring.service.RatingSummaryService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -27,6 +36,9 @@ public class ReviewsIntgTest {
     @Autowired
     ReviewRepository reviewRepository;
 
+    @Autowired
+    RatingSummaryService ratingSummaryService;
+
     static String REVIEW_URL = "/v1/reviews";
 
     @BeforeEach
@@ -65,6 +77,22 @@ public class ReviewsIntgTest {
                 });
     }
 
+    @Test
+    void addReview_existingId() {
+        var review = new Review("abc", 1L, "Awesome Movie", 9.0);
+
+        webTestClient
+                .post()
+                .uri(REVIEW_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        var existing = reviewRepository.findById("abc").block();
+        assertEquals(2L, existing.getMovieInfoId());
+    }
+
     @Test
     void addReview_validation() {
         var review = new Review(null, null, "Awesome Movie", -9.0);
@@ -108,6 +136,170 @@ public class ReviewsIntgTest {
 
     }
 
+    @Test
+    void getReviewsByMovieInfoIds() {
+        var uri = UriComponentsBuilder.fromUriString(REVIEW_URL)
+                .queryParam("movieInfoIds", "2,1")
+                .queryParam("movieInfoIds", "3")
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .hasSize(3)
+                .consumeWith(result -> {
+                    var movieInfoIds = result.getResponseBody().stream()
+                            .map(Review::getMovieInfoId)
+                            .collect(Collectors.toList());
+                    assertEquals(List.of(1L, 1L, 2L), movieInfoIds);
+                });
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_limitPerMovie() {
+        var uri = UriComponentsBuilder.fromUriString(REVIEW_URL)
+                .queryParam("movieInfoIds", "1,2")
+                .queryParam("limitPerMovie", "1")
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .consumeWith(result -> {
+                    var movieInfoIds = result.getResponseBody().stream()
+                            .map(Review::getMovieInfoId)
+                            .collect(Collectors.toList());
+                    assertEquals(List.of(1L, 2L), movieInfoIds);
+                });
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_limitPerMovieKeepsTheLowestIds() {
+        reviewRepository.saveAll(List.of(
+                        new Review("r3", 3L, "Good Movie", 7.0),
+                        new Review("r1", 3L, "Good Movie1", 7.0),
+                        new Review("r2", 3L, "Good Movie2", 7.0)))
+                .blockLast();
+        var uri = UriComponentsBuilder.fromUriString(REVIEW_URL)
+                .queryParam("movieInfoIds", "2,3")
+                .queryParam("limitPerMovie", "2")
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .consumeWith(result -> {
+                    var reviewIds = result.getResponseBody().stream()
+                            .map(Review::getReviewId)
+                            .collect(Collectors.toList());
+                    assertEquals(List.of("abc", "r1", "r2"), reviewIds);
+                });
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_invalid() {
+        var uri = UriComponentsBuilder.fromUriString(REVIEW_URL)
+                .queryParam("movieInfoIds", "1,abc")
+                .buildAndExpand().toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void getReviewPage_byRatingDescending() {
+        var reviews = new ArrayList<Review>();
+        String uri = REVIEW_URL + "?sort=-rating&limit=1";
+        while (uri != null) {
+            var page = webTestClient
+                    .get()
+                    .uri(uri)
+                    .exchange()
+                    .expectStatus()
+                    .isOk()
+                    .expectBodyList(Review.class)
+                    .hasSize(1)
+                    .returnResult();
+            reviews.addAll(page.getResponseBody());
+            var link = page.getResponseHeaders().getFirst(HttpHeaders.LINK);
+            uri = link != null ? link.substring(link.indexOf('<') + 1, link.indexOf('>')) : null;
+        }
+
+        assertEquals(List.of(9.0, 9.0, 8.0),
+                reviews.stream().map(Review::getRating).collect(Collectors.toList()));
+        assertEquals(3, reviews.stream().map(Review::getReviewId).distinct().count());
+    }
+
+    @Test
+    void getReviewPage_byIdOfMovie() {
+        var firstPage = webTestClient
+                .get()
+                .uri(REVIEW_URL + "?movieInfoId=1&limit=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .returnResult();
+
+        var link = firstPage.getResponseHeaders().getFirst(HttpHeaders.LINK);
+        assertNotNull(link);
+        var secondPage = webTestClient
+                .get()
+                .uri(link.substring(link.indexOf('<') + 1, link.indexOf('>')))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Review.class)
+                .hasSize(1)
+                .returnResult();
+
+        assertNull(secondPage.getResponseHeaders().getFirst(HttpHeaders.LINK));
+        assertEquals(1L, secondPage.getResponseBody().get(0).getMovieInfoId());
+        assertNotEquals(firstPage.getResponseBody().get(0).getReviewId(),
+                secondPage.getResponseBody().get(0).getReviewId());
+    }
+
+    @Test
+    void getReviewPage_invalid() {
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?limit=1001")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?sort=comment")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?after=abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void updateReview() {
         var updateReviewData = new Review(null, 1L, "Awesome Movie1", 9.0);
@@ -144,4 +336,73 @@ public class ReviewsIntgTest {
 //                .is2xxSuccessful()
 //                .expectBody(Void.class);
     }
+
+    @Test
+    void getRatingSummary() {
+        webTestClient
+                .post()
+                .uri(REVIEW_URL + "/summary/rebuild")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.summaries").isEqualTo(2);
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "/summary/{movieInfoId}", 1L)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.average").isEqualTo(9.0)
+                .jsonPath("$.histogram.length()").isEqualTo(RatingSummary.MAX_BUCKET + 1)
+                .jsonPath("$.histogram.6").isEqualTo(0)
+                .jsonPath("$.histogram.9").isEqualTo(2);
+
+        var addedReview = webTestClient
+                .post()
+                .uri(REVIEW_URL)
+                .bodyValue(new Review(null, 1L, "Good Movie", 6.0))
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+
+        // served with the changes not written yet
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "/summary/{movieInfoId}", 1L)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.average").isEqualTo(8.0)
+                .jsonPath("$.min").isEqualTo(6.0);
+
+        webTestClient
+                .delete()
+                .uri(REVIEW_URL + "/{id}", addedReview.getReviewId())
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+        ratingSummaryService.flush().block();
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "/summary/{movieInfoId}", 1L)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2)
+                .jsonPath("$.min").isEqualTo(9.0)
+                .jsonPath("$.histogram.length()").isEqualTo(RatingSummary.MAX_BUCKET + 1)
+                .jsonPath("$.histogram.6").isEqualTo(0)
+                .jsonPath("$.histogram.9").isEqualTo(2);
+    }
 }
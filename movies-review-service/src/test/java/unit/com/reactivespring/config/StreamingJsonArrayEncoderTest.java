@@ -0,0 +1,43 @@
+package com.reactivespring.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamingJsonArrayEncoderTest {
+
+    StreamingJsonArrayEncoder encoder = new StreamingJsonArrayEncoder(new ObjectMapper());
+
+    String encode(Publisher<?> input, MediaType mediaType) {
+        return DataBufferUtils.join(encoder.encode(input, DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(Review.class), mediaType, null))
+                .map(dataBuffer -> dataBuffer.toString(StandardCharsets.UTF_8))
+                .block();
+    }
+
+    @Test
+    void encode_flux() {
+        var json = encode(Flux.just(new Review("1", 1L, "Awesome Movie", 9.0), new Review("2", 1L, "Excellent Movie", 8.0)),
+                MediaType.APPLICATION_JSON);
+
+        assertEquals("[{\"reviewId\":\"1\",\"movieInfoId\":1,\"comment\":\"Awesome Movie\",\"rating\":9.0},"
+                + "{\"reviewId\":\"2\",\"movieInfoId\":1,\"comment\":\"Excellent Movie\",\"rating\":8.0}]", json);
+    }
+
+    @Test
+    void encode_ndjson() {
+        var json = encode(Flux.just(new Review("1", 1L, "Awesome Movie", 9.0)), MediaType.APPLICATION_NDJSON);
+
+        assertEquals("{\"reviewId\":\"1\",\"movieInfoId\":1,\"comment\":\"Awesome Movie\",\"rating\":9.0}\n", json);
+    }
+}
@@ -0,0 +1,78 @@
+package com.reactivespring.handler;
+
+import com.reactivespring.domain.Review;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReviewStreamPartitionsTest {
+
+    ReviewStreamPartitions reviewStreamPartitions = new ReviewStreamPartitions(2, Duration.ZERO);
+
+    @Test
+    void stream_onlyReviewsOfTheMovie() {
+        StepVerifier.create(reviewStreamPartitions.stream(1L))
+                .then(() -> {
+                    reviewStreamPartitions.publish(new Review("1", 1L, "Awesome Movie", 9.0));
+                    reviewStreamPartitions.publish(new Review("2", 2L, "Excellent Movie", 8.0));
+                    reviewStreamPartitions.publish(new Review("3", 1L, "Awesome Movie1", 7.0));
+                })
+                .assertNext(review -> assertEquals("1", review.getReviewId()))
+                .assertNext(review -> assertEquals("3", review.getReviewId()))
+                .thenCancel()
+                .verify();
+
+        // no subscriber asked for the movie 2
+        assertEquals(1, reviewStreamPartitions.partitionCount());
+    }
+
+    @Test
+    void stream_replaysTheLastReviews() {
+        StepVerifier.create(reviewStreamPartitions.stream(1L))
+                .then(() -> {
+                    reviewStreamPartitions.publish(new Review("1", 1L, "Awesome Movie", 9.0));
+                    reviewStreamPartitions.publish(new Review("2", 1L, "Excellent Movie", 8.0));
+                    reviewStreamPartitions.publish(new Review("3", 1L, "Awesome Movie1", 7.0));
+                })
+                .expectNextCount(3)
+                .thenCancel()
+                .verify();
+
+        StepVerifier.create(reviewStreamPartitions.stream(1L))
+                .assertNext(review -> assertEquals("2", review.getReviewId()))
+                .assertNext(review -> assertEquals("3", review.getReviewId()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void evictIdlePartitions() {
+        var subscription = reviewStreamPartitions.stream(1L).subscribe();
+        reviewStreamPartitions.stream(2L).subscribe().dispose();
+
+        reviewStreamPartitions.evictIdlePartitions();
+
+        assertEquals(1, reviewStreamPartitions.partitionCount());
+
+        subscription.dispose();
+        reviewStreamPartitions.evictIdlePartitions();
+
+        assertEquals(0, reviewStreamPartitions.partitionCount());
+    }
+
+    @Test
+    void streamAll_replaysTheLastReviewsOnly() {
+        for (int i = 1; i <= 3; i++) {
+            reviewStreamPartitions.publish(new Review(String.valueOf(i), (long) i, "Awesome Movie", 9.0));
+        }
+
+        StepVerifier.create(reviewStreamPartitions.streamAll())
+                .assertNext(review -> assertEquals("2", review.getReviewId()))
+                .assertNext(review -> assertEquals("3", review.getReviewId()))
+                .thenCancel()
+                .verify();
+    }
+}
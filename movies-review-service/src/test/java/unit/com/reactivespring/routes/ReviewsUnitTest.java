@@ -1,9 +1,14 @@
 package com.reactivespring.routes;
 
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSort;
+import com.reactivespring.handler.RatingSummaryHandler;
 import com.reactivespring.handler.ReviewHandler;
+import com.reactivespring.handler.ReviewStreamPartitions;
 import com.reactivespring.repository.ReviewRepository;
 import com.reactivespring.router.ReviewRouter;
+import com.reactivespring.service.RatingSummaryService;
+import com.reactivespring.service.ReviewBatchLoader;
 import com.reactivespring.exceptionhandler.GlobalErrorHandler;
 import net.bytebuddy.asm.Advice;
 import org.junit.jupiter.api.Test;
@@ -11,27 +16,44 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class})
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, ReviewStreamPartitions.class,
+        RatingSummaryHandler.class, GlobalErrorHandler.class})
 @AutoConfigureWebTestClient
 public class ReviewsUnitTest {
 
     @MockBean
     ReviewRepository reviewRepository;
 
+    @MockBean
+    RatingSummaryService ratingSummaryService;
+
+    @MockBean
+    ReviewBatchLoader reviewBatchLoader;
+
     @Autowired
     WebTestClient webTestClient;
 
+    @Autowired
+    ReviewStreamPartitions reviewStreamPartitions;
+
     static String REVIEW_URL = "/v1/reviews";
 
     @Test
@@ -39,7 +61,7 @@ public class ReviewsUnitTest {
 
         var review = new Review(null, 1L, "Awesome Movie", 9.0);
 
-        when(reviewRepository.save(isA(Review.class)))
+        when(reviewRepository.insert(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         webTestClient
@@ -64,7 +86,7 @@ public class ReviewsUnitTest {
 
         var review = new Review(null, null, "Awesome Movie", -9.0);
 
-        when(reviewRepository.save(isA(Review.class)))
+        when(reviewRepository.insert(isA(Review.class)))
                 .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         webTestClient
@@ -85,7 +107,9 @@ public class ReviewsUnitTest {
                 new Review(null, 1L, "Awesome Movie1", 9.0),
                 new Review("abc", 2L, "Excellent Movie", 8.0));
 
-        when(reviewRepository.findAll()).thenReturn(Flux.fromIterable(reviewsList));
+        // the first page of the max page size
+        when(reviewRepository.findReviewPage(isNull(), eq(ReviewSort.ID), isNull(), eq(1001)))
+                .thenReturn(Flux.fromIterable(reviewsList));
 
         webTestClient
                 .get()
@@ -93,8 +117,156 @@ public class ReviewsUnitTest {
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(HttpHeaders.LINK)
                 .expectBodyList(Review.class)
                 .hasSize(3);
+
+        verify(reviewRepository, never()).findAll();
+    }
+
+    @Test
+    void getAllReviews_cappedAtTheMaxPageSize() {
+        var reviewsList = LongStream.range(0, 1001)
+                .mapToObj(i -> new Review(String.valueOf(i), 1L, "Awesome Movie", 9.0))
+                .collect(Collectors.toList());
+
+        when(reviewRepository.findReviewPage(isNull(), eq(ReviewSort.ID), isNull(), eq(1001)))
+                .thenReturn(Flux.fromIterable(reviewsList));
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .value(HttpHeaders.LINK, link -> assertTrue(link.endsWith("; rel=\"next\"")))
+                .expectBodyList(Review.class)
+                .hasSize(1000);
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_limitPerMovie() {
+        var reviewsList = List.of(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review("abc", 2L, "Excellent Movie", 8.0));
+
+        when(reviewRepository.findFirstReviews(eq(Set.of(1L, 2L)), eq(1)))
+                .thenReturn(Flux.fromIterable(reviewsList));
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?movieInfoIds=1,2&limitPerMovie=1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .consumeWith(result -> assertEquals(List.of("Awesome Movie", "Excellent Movie"),
+                        result.getResponseBody().stream().map(Review::getComment).collect(Collectors.toList())));
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_tooManyIds() {
+        var movieInfoIds = LongStream.rangeClosed(1, 101)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(","));
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?movieInfoIds=" + movieInfoIds)
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        verify(reviewRepository, never()).findFirstReviews(any(), anyInt());
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds_limitPerMovieAboveTheMaxPageSize() {
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?movieInfoIds=1,2&limitPerMovie=1001")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+
+        verify(reviewRepository, never()).findFirstReviews(any(), anyInt());
+    }
+
+    @Test
+    void getReviewsOfMovie_cappedAtTheMaxPageSize() {
+        var reviewsList = LongStream.range(0, 1001)
+                .mapToObj(i -> new Review(String.valueOf(i), 1L, "Awesome Movie", 9.0))
+                .collect(Collectors.toList());
+
+        when(reviewBatchLoader.findReviewsByMovieInfoId(1L, 1001))
+                .thenReturn(Flux.fromIterable(reviewsList));
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .value(HttpHeaders.LINK, link -> assertTrue(link.contains("/v1/reviews?movieInfoId=1&after=")))
+                .expectBodyList(Review.class)
+                .hasSize(1000);
+
+        verify(reviewRepository, never()).findReviewPage(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getReviewPage() {
+        var reviewsList = List.of(
+                new Review("abc", 2L, "Excellent Movie", 8.0),
+                new Review("def", 1L, "Awesome Movie", 9.0),
+                new Review("ghi", 1L, "Awesome Movie1", 9.0));
+
+        when(reviewRepository.findReviewPage(isNull(), eq(ReviewSort.RATING), isNull(), eq(3)))
+                .thenReturn(Flux.fromIterable(reviewsList));
+
+        webTestClient
+                .get()
+                .uri(REVIEW_URL + "?sort=rating&limit=2")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .value(HttpHeaders.LINK, link -> assertTrue(link.endsWith("; rel=\"next\"")))
+                .expectBodyList(Review.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getReviewsStream_ofMovie() {
+        // the server subscribes to the partition before sending the headers, which wait for a first review
+        var publishing = Flux.interval(Duration.ofMillis(100))
+                .subscribe(tick -> {
+                    reviewStreamPartitions.publish(new Review("def", 2L, "Excellent Movie", 8.0));
+                    reviewStreamPartitions.publish(new Review("abc", 1L, "Awesome Movie", 9.0));
+                });
+        try {
+            var reviewStream = webTestClient
+                    .get()
+                    .uri(REVIEW_URL + "/stream?movieInfoId=1")
+                    .exchange()
+                    .expectStatus()
+                    .is2xxSuccessful()
+                    .returnResult(Review.class)
+                    .getResponseBody();
+
+            StepVerifier.create(reviewStream)
+                    .assertNext(review -> assertEquals(1L, review.getMovieInfoId()))
+                    .assertNext(review -> assertEquals(1L, review.getMovieInfoId()))
+                    .thenCancel()
+                    .verify(Duration.ofSeconds(5));
+        } finally {
+            publishing.dispose();
+        }
+
+        verifyNoInteractions(reviewRepository, reviewBatchLoader);
     }
 
     @Test
@@ -103,8 +275,8 @@ public class ReviewsUnitTest {
         var updateReviewData = new Review(null, 1L, "Awesome Movie1", 9.0);
         var reviewId = "abc";
 
-        when(reviewRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
-        when(reviewRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewRepository.updateReview(reviewId, "Awesome Movie1", 9.0))
+                .thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
 
         webTestClient
                 .put()
@@ -119,7 +291,7 @@ public class ReviewsUnitTest {
 
                     assert updatedReviewInfo != null;
                     assert updatedReviewInfo.getReviewId() != null;
-                    assertEquals("Not an Awesome Movie", updatedReviewInfo.getComment());
+                    assertEquals("Awesome Movie1", updatedReviewInfo.getComment());
 
                 });
     }
@@ -128,8 +300,7 @@ public class ReviewsUnitTest {
     void deleteReview() {
 
         var reviewId= "abc";
-        when(reviewRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
-        when(reviewRepository.deleteById((String) any())).thenReturn(Mono.empty());
+        when(reviewRepository.removeReview(reviewId)).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
 
         //when
         webTestClient
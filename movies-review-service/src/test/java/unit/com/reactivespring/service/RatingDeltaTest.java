@@ -0,0 +1,69 @@
+package com.reactivespring.service;
+
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RatingDeltaTest {
+
+    RatingDelta delta = new RatingDelta();
+
+    @Test
+    void startFlush_drainsThePendingChanges() {
+        delta.add(9.0);
+        delta.add(6.0);
+
+        var snapshot = delta.startFlush();
+
+        assertEquals(2, snapshot.count);
+        assertEquals(15.0, snapshot.sum);
+        assertEquals(1, snapshot.histogram[6]);
+        assertEquals(1, snapshot.histogram[9]);
+        assertTrue(delta.snapshot().isEmpty());
+    }
+
+    @Test
+    void startFlush_nothingToWrite() {
+        assertNull(delta.startFlush());
+        assertNull(delta.flushInFlight());
+        assertTrue(delta.isIdle());
+    }
+
+    @Test
+    void snapshotIfNoFlushSince_nullOnceAFlushStarted() {
+        delta.add(9.0);
+        var flushes = delta.flushesStarted();
+        assertNotNull(delta.snapshotIfNoFlushSince(flushes));
+
+        delta.startFlush();
+        delta.add(8.0);
+
+        // the stored summary read before may or may not hold the drained change
+        assertNull(delta.snapshotIfNoFlushSince(flushes));
+        assertNull(delta.snapshotIfNoFlushSince(delta.flushesStarted()));
+        assertFalse(delta.isIdle());
+
+        delta.endFlush();
+        assertEquals(1, delta.snapshotIfNoFlushSince(delta.flushesStarted()).count);
+    }
+
+    @Test
+    void flushInFlight_completesAtTheEndOfTheFlush() {
+        delta.add(9.0);
+        delta.startFlush();
+        var flushInFlight = delta.flushInFlight();
+        // one flush at a time
+        assertNull(delta.startFlush());
+
+        delta.endFlush();
+
+        StepVerifier.create(flushInFlight)
+                .verifyComplete();
+        assertTrue(delta.isIdle());
+    }
+}
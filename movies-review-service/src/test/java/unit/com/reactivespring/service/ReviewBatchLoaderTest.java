@@ -0,0 +1,223 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSort;
+import com.reactivespring.repository.ReviewRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReviewBatchLoaderTest {
+
+    static final int LIMIT = 100;
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    ReviewRepository reviewRepository = mock(ReviewRepository.class);
+
+    List<Review> reviews = List.of(
+            new Review("a", 1L, "Awesome Movie", 9.0),
+            new Review("b", 1L, "Awesome Movie1", 9.0),
+            new Review("c", 2L, "Excellent Movie", 8.0));
+
+    ReviewBatchLoader batchLoader(Duration window, int maxBatchSize) {
+        return new ReviewBatchLoader(reviewRepository, meterRegistry, window, maxBatchSize, Schedulers.parallel());
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_concurrentLookupsShareOneQuery() {
+        when(reviewRepository.findFirstReviews(eq(Set.of(1L, 2L, 3L)), anyInt()))
+                .thenReturn(Flux.fromIterable(reviews));
+        var batchLoader = batchLoader(Duration.ofMillis(50), 100);
+
+        var reviewCounts = Flux.just(1L, 2L, 3L, 1L)
+                .flatMapSequential(movieInfoId -> batchLoader.findReviewsByMovieInfoId(movieInfoId, LIMIT).count());
+
+        StepVerifier.create(reviewCounts)
+                .expectNext(2L, 1L, 0L, 2L)
+                .verifyComplete();
+
+        verify(reviewRepository, times(1)).findFirstReviews(any(), anyInt());
+        verify(reviewRepository, never()).findReviewPage(any(), any(), any(), anyInt());
+        assertEquals(4, meterRegistry.timer("reviews.lookup.batch.delay").count());
+        assertEquals(1, meterRegistry.summary("reviews.lookup.batch.fill").count());
+        assertEquals(0.03, meterRegistry.summary("reviews.lookup.batch.fill").totalAmount(), 0.0001);
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_fullBatchDispatchedBeforeWindow() {
+        when(reviewRepository.findFirstReviews(eq(Set.of(1L, 2L)), anyInt()))
+                .thenReturn(Flux.fromIterable(reviews));
+        var batchLoader = batchLoader(Duration.ofMinutes(1), 2);
+
+        var reviewCounts = Flux.just(1L, 2L)
+                .flatMapSequential(movieInfoId -> batchLoader.findReviewsByMovieInfoId(movieInfoId, LIMIT).count());
+
+        StepVerifier.create(reviewCounts)
+                .expectNext(2L, 1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_batchReadsTheLargestLimit() {
+        when(reviewRepository.findFirstReviews(eq(Set.of(1L, 2L)), eq(2)))
+                .thenReturn(Flux.fromIterable(reviews));
+        var batchLoader = batchLoader(Duration.ofMillis(50), 100);
+
+        var reviewCounts = Flux.merge(batchLoader.findReviewsByMovieInfoId(1L, 1).count(),
+                batchLoader.findReviewsByMovieInfoId(2L, 2).count());
+
+        StepVerifier.create(reviewCounts.collectList())
+                .expectNext(List.of(1L, 1L))
+                .verifyComplete();
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_singleMovie() {
+        when(reviewRepository.findReviewPage(1L, ReviewSort.ID, null, LIMIT))
+                .thenReturn(Flux.fromIterable(reviews.subList(0, 2)));
+
+        StepVerifier.create(batchLoader(Duration.ofMillis(1), 100).findReviewsByMovieInfoId(1L, LIMIT))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        verify(reviewRepository, never()).findFirstReviews(any(), anyInt());
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_errorReachesEveryLookup() {
+        when(reviewRepository.findFirstReviews(any(), anyInt()))
+                .thenReturn(Flux.error(new IllegalStateException("down")));
+        var batchLoader = batchLoader(Duration.ofMillis(50), 100);
+
+        var results = Flux.just(1L, 2L)
+                .flatMap(movieInfoId -> batchLoader.findReviewsByMovieInfoId(movieInfoId, LIMIT)
+                        .map(Review::getReviewId)
+                        .onErrorReturn("error"));
+
+        StepVerifier.create(results)
+                .expectNext("error", "error")
+                .verifyComplete();
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_zeroWindowDisablesBatching() {
+        when(reviewRepository.findReviewPage(any(), any(), any(), anyInt()))
+                .thenReturn(Flux.fromIterable(reviews.subList(0, 2)));
+        var batchLoader = batchLoader(Duration.ZERO, 100);
+
+        var reviewCounts = Flux.just(1L, 1L)
+                .flatMap(movieInfoId -> batchLoader.findReviewsByMovieInfoId(movieInfoId, LIMIT).count());
+
+        StepVerifier.create(reviewCounts)
+                .expectNext(2L, 2L)
+                .verifyComplete();
+
+        verify(reviewRepository, times(2)).findReviewPage(1L, ReviewSort.ID, null, LIMIT);
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_queryReadAtThePaceOfTheLookups() {
+        var requested = new AtomicLong();
+        when(reviewRepository.findFirstReviews(any(), anyInt()))
+                .thenReturn(Flux.range(0, 100_000)
+                        .map(i -> new Review(String.valueOf(i), (long) (i % 2), "Awesome Movie", 9.0))
+                        .doOnRequest(requested::addAndGet));
+        var batchLoader = batchLoader(Duration.ofMillis(50), 100);
+
+        var reviews = Flux.merge(batchLoader.findReviewsByMovieInfoId(0L, LIMIT), batchLoader.findReviewsByMovieInfoId(1L, LIMIT));
+
+        StepVerifier.create(reviews, 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(200))
+                .thenRequest(10)
+                .expectNextCount(10)
+                .thenCancel()
+                .verify();
+
+        assertTrue(requested.get() < 1000, "requested: " + requested.get());
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_queryCancelledWithItsLookups() {
+        var cancelled = new AtomicBoolean();
+        when(reviewRepository.findFirstReviews(any(), anyInt()))
+                .thenReturn(Flux.<Review>never().doOnCancel(() -> cancelled.set(true)));
+        var batchLoader = batchLoader(Duration.ofMillis(50), 100);
+
+        var reviews = Flux.merge(batchLoader.findReviewsByMovieInfoId(1L, LIMIT), batchLoader.findReviewsByMovieInfoId(2L, LIMIT));
+
+        StepVerifier.create(reviews)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(200))
+                .thenCancel()
+                .verify();
+
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_lookupFillingTheBatchGetsASynchronousQuery() {
+        when(reviewRepository.findFirstReviews(eq(Set.of(1L, 2L)), anyInt()))
+                .thenReturn(Flux.fromIterable(reviews));
+        var batchLoader = batchLoader(Duration.ofMinutes(1), 2);
+        var firstLookup = batchLoader.findReviewsByMovieInfoId(1L, LIMIT).collectList().toFuture();
+
+        // the second lookup fills the batch and dispatches it before subscribing
+        StepVerifier.create(batchLoader.findReviewsByMovieInfoId(2L, LIMIT).map(Review::getReviewId))
+                .expectNext("c")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, firstLookup.join().size());
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_otherLookupsOfTheBatchCancelled() {
+        when(reviewRepository.findFirstReviews(eq(Set.of(1L, 2L)), anyInt()))
+                .thenReturn(Flux.fromIterable(reviews));
+        var batchLoader = batchLoader(Duration.ofMinutes(1), 2);
+        batchLoader.findReviewsByMovieInfoId(1L, LIMIT).subscribe().dispose();
+
+        StepVerifier.create(batchLoader.findReviewsByMovieInfoId(2L, LIMIT).map(Review::getReviewId))
+                .expectNext("c")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void findReviewsByMovieInfoId_queryNotRunWhenEveryLookupIsCancelled() {
+        var subscribed = new AtomicBoolean();
+        when(reviewRepository.findFirstReviews(any(), anyInt()))
+                .thenReturn(Flux.fromIterable(reviews).doOnSubscribe(subscription -> subscribed.set(true)));
+        var batchLoader = batchLoader(Duration.ofMillis(50), 100);
+
+        var reviews = Flux.merge(batchLoader.findReviewsByMovieInfoId(1L, LIMIT), batchLoader.findReviewsByMovieInfoId(2L, LIMIT));
+
+        StepVerifier.create(reviews)
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+        // past the batch window
+        Mono.delay(Duration.ofMillis(200)).block();
+
+        assertFalse(subscribed.get());
+    }
+}
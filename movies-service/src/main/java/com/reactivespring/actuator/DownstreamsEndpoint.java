@@ -0,0 +1,61 @@
+package com.reactivespring.actuator;
+
+import com.reactivespring.util.DownstreamGuard;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exposes the circuit breaker state and the rejection counts of every downstream at /actuator/downstreams.
+ */
+@Component
+@Endpoint(id = "downstreams")
+public class DownstreamsEndpoint {
+
+    private List<DownstreamGuard> downstreamGuards;
+
+    public DownstreamsEndpoint(List<DownstreamGuard> downstreamGuards) {
+        this.downstreamGuards = downstreamGuards;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> downstreams() {
+        var downstreams = new LinkedHashMap<String, Map<String, Object>>();
+        downstreamGuards.forEach(downstreamGuard ->
+                downstreams.put(downstreamGuard.getName(), describe(downstreamGuard)));
+        return downstreams;
+    }
+
+    @ReadOperation
+    public Map<String, Object> downstream(@Selector String name) {
+        return downstreamGuards.stream()
+                .filter(downstreamGuard -> downstreamGuard.getName().equals(name))
+                .findFirst()
+                .map(this::describe)
+                .orElse(null);
+    }
+
+    private Map<String, Object> describe(DownstreamGuard downstreamGuard) {
+        var circuitBreaker = downstreamGuard.getCircuitBreaker();
+        var circuitBreakerMetrics = circuitBreaker.getMetrics();
+        var bulkheadMetrics = downstreamGuard.getBulkhead().getMetrics();
+
+        var description = new LinkedHashMap<String, Object>();
+        description.put("state", circuitBreaker.getState().name());
+        description.put("failureRate", circuitBreakerMetrics.getFailureRate());
+        description.put("slowCallRate", circuitBreakerMetrics.getSlowCallRate());
+        description.put("bufferedCalls", circuitBreakerMetrics.getNumberOfBufferedCalls());
+        description.put("failedCalls", circuitBreakerMetrics.getNumberOfFailedCalls());
+        description.put("slowCalls", circuitBreakerMetrics.getNumberOfSlowCalls());
+        description.put("notPermittedCalls", circuitBreakerMetrics.getNumberOfNotPermittedCalls());
+        description.put("availableConcurrentCalls", bulkheadMetrics.getAvailableConcurrentCalls());
+        description.put("maxAllowedConcurrentCalls", bulkheadMetrics.getMaxAllowedConcurrentCalls());
+        description.put("bulkheadRejectedCalls", downstreamGuard.getBulkheadRejections());
+        return description;
+    }
+}
@@ -0,0 +1,96 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.Movie;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Size bounded (W-TinyLFU) read-through cache of aggregated movies.
+ * Concurrent misses for the same id share one in-flight load, and entries are invalidated by the movie info stream,
+ * on the saves and on the deletes of their movie info.
+ */
+@Component
+@Slf4j
+public class MovieCache {
+
+    private MoviesInfoRestClient moviesInfoRestClient;
+    private AsyncCache<String, Movie> cache;
+    private boolean enabled;
+    private Disposable invalidationSubscription;
+
+    public MovieCache(MoviesInfoRestClient moviesInfoRestClient,
+                      MeterRegistry meterRegistry,
+                      @Value("${movies.cache.enabled:true}") boolean enabled,
+                      @Value("${movies.cache.maximumSize:10000}") long maximumSize,
+                      @Value("${movies.cache.expireAfterWrite:5m}") Duration expireAfterWrite) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "movies");
+    }
+
+    @PostConstruct
+    public void subscribeToInvalidations() {
+        if (!enabled) {
+            return;
+        }
+        invalidationSubscription = moviesInfoRestClient.retrieveChangedMovieInfoIds()
+                .doOnNext(this::invalidate)
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(retrySignal ->
+                                log.warn("Movie info stream failed, resubscribing: {}", retrySignal.failure().getMessage())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void unsubscribeFromInvalidations() {
+        if (invalidationSubscription != null) {
+            invalidationSubscription.dispose();
+        }
+    }
+
+    public Mono<Movie> get(String movieId, Function<String, Mono<Movie>> loader) {
+        if (!enabled) {
+            return loader.apply(movieId);
+        }
+        return Mono.defer(() -> {
+            var future = cache.get(movieId, (key, executor) -> loader.apply(key).toFuture());
+            // cancelling one subscriber must not cancel the load shared with the other subscribers
+            return Mono.<Movie>create(sink -> future.whenComplete((movie, ex) -> {
+                if (ex != null) {
+                    sink.error(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                } else {
+                    sink.success(movie);
+                }
+            }));
+        });
+    }
+
+    public void invalidate(String movieId) {
+        if (movieId != null) {
+            log.debug("Invalidating the cached movie for the id: {}", movieId);
+            cache.synchronous().invalidate(movieId);
+        }
+    }
+}
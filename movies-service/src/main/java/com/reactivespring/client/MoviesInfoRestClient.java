@@ -1,37 +1,91 @@
 package com.reactivespring.client;
 
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.config.StreamProperties;
 import com.reactivespring.config.WebClientConfig;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.util.DownstreamGuard;
+import com.reactivespring.util.HedgingPolicy;
+import com.reactivespring.util.RetryPolicy;
+import com.reactivespring.util.SharedStream;
+import com.reactivespring.util.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClientRequest;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 @Slf4j
 public class MoviesInfoRestClient {
 
     private WebClient webClient;
+    private SingleFlight<String, MovieInfo> singleFlight;
+    private RetryPolicy retryPolicy;
+    private DownstreamGuard downstreamGuard;
+    private HedgingPolicy hedgingPolicy;
+    private SharedStream<StreamedMovieInfo> sharedStream;
+    private final AtomicReference<Long> lastStreamSequence = new AtomicReference<>();
+    // last movie info received per id, with its ETag, revalidated by the following calls
+    private Cache<String, CachedMovieInfo> validatedMovieInfos;
+    private Counter notModifiedCounter;
+    private Counter modifiedCounter;
 
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
-    public MoviesInfoRestClient(WebClient webClient) {
+    public MoviesInfoRestClient(@Qualifier("moviesInfoWebClient") WebClient webClient,
+                                MeterRegistry meterRegistry,
+                                @Qualifier("moviesInfoRetryPolicy") RetryPolicy retryPolicy,
+                                @Qualifier("moviesInfoGuard") DownstreamGuard downstreamGuard,
+                                @Qualifier("moviesInfoHedgingPolicy") HedgingPolicy hedgingPolicy,
+                                @Qualifier("moviesInfoStreamProperties") StreamProperties streamProperties,
+                                @Value("${restClient.moviesInfo.revalidation.maximumSize:10000}") long revalidationMaximumSize) {
         this.webClient = webClient;
+        this.singleFlight = new SingleFlight<>("moviesInfo", meterRegistry);
+        this.retryPolicy = retryPolicy;
+        this.downstreamGuard = downstreamGuard;
+        this.hedgingPolicy = hedgingPolicy;
+        this.sharedStream = new SharedStream<>("moviesInfo", Flux.defer(this::fetchMovieInfoStream),
+                streamProperties, meterRegistry);
+        this.validatedMovieInfos = Caffeine.newBuilder()
+                .maximumSize(revalidationMaximumSize)
+                .build();
+        this.notModifiedCounter = Counter.builder("restClient.revalidations")
+                .tag("client", "moviesInfo")
+                .tag("result", "notModified")
+                .register(meterRegistry);
+        this.modifiedCounter = Counter.builder("restClient.revalidations")
+                .tag("client", "moviesInfo")
+                .tag("result", "modified")
+                .register(meterRegistry);
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieInfoId) {
+        return singleFlight.execute(movieInfoId, () -> fetchMovieInfo(movieInfoId));
+    }
+
+    private Mono<MovieInfo> fetchMovieInfo(String movieInfoId) {
         var url = moviesInfoUrl.concat("/{id}");
 
         /*var retrySpec = Retry.fixedDelay(3, Duration.ofSeconds(1))
@@ -58,9 +112,16 @@ public class MoviesInfoRestClient {
                 })
                 .bodyToMono(MovieInfo.class)
                 .log();*/
+        // a cached copy turns the call into a conditional request, answered by a bodiless 304 when it is still current
+        var cached = validatedMovieInfos.getIfPresent(movieInfoId);
         return webClient
                 .get()
                 .uri(url, movieInfoId)
+                .headers(headers -> {
+                    if (cached != null) {
+                        headers.setIfNoneMatch(cached.eTag);
+                    }
+                })
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.error("Status code is: {}", clientResponse.statusCode().value());
@@ -77,31 +138,109 @@ public class MoviesInfoRestClient {
                 })
                 .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
                     log.error("Status code is: {}", clientResponse.statusCode().value());
+                    var retryAfter = RetryPolicy.parseRetryAfter(
+                            clientResponse.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER));
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(responseMessage -> Mono.error(
                                     new MoviesInfoServerException(
-                                            "Server exception in the MovieInfoService: " + responseMessage))
+                                            "Server exception in the MovieInfoService: " + responseMessage, retryAfter))
                             );
                 })
-                .bodyToMono(MovieInfo.class)
+                .toEntity(MovieInfo.class)
+                .flatMap(response -> Mono.justOrEmpty(revalidated(movieInfoId, cached, response)))
+                .transformDeferred(downstreamGuard::protect)
+                .transform(hedgingPolicy::hedge)
                 //.retry(3)
-                .retryWhen(RetryUtil.retrySpec())
+                .retryWhen(retryPolicy)
                 .log();
 
         //return responseData;
 
     }
 
+    private MovieInfo revalidated(String movieInfoId, CachedMovieInfo cached, ResponseEntity<MovieInfo> response) {
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached != null) {
+            notModifiedCounter.increment();
+            return cached.movieInfo;
+        }
+        if (cached != null) {
+            modifiedCounter.increment();
+        }
+        var eTag = response.getHeaders().getETag();
+        if (eTag != null && response.getBody() != null) {
+            validatedMovieInfos.put(movieInfoId, new CachedMovieInfo(response.getBody(), eTag));
+        } else {
+            validatedMovieInfos.invalidate(movieInfoId);
+        }
+        return response.getBody();
+    }
+
+    /**
+     * The saved movie infos. Every subscriber shares a single upstream connection to the movie info stream.
+     */
     public Flux<MovieInfo> retrieveMovieInfoStream() {
-        var url = moviesInfoUrl.concat("/stream");
+        return sharedStream.stream()
+                .filter(streamed -> !streamed.isDelete())
+                .map(StreamedMovieInfo::getMovieInfo);
+    }
+
+    /**
+     * The ids of the saved and of the deleted movie infos, from the same shared connection.
+     */
+    public Flux<String> retrieveChangedMovieInfoIds() {
+        return sharedStream.stream()
+                .map(streamed -> streamed.getMovieInfo().getMovieInfoId());
+    }
+
+    // called for every (re)connection, resuming after the last movie info received instead of replaying the buffer
+    private Flux<StreamedMovieInfo> fetchMovieInfoStream() {
+        var after = lastStreamSequence.get();
+        var url = after != null
+                ? moviesInfoUrl.concat("/stream?after=" + after)
+                : moviesInfoUrl.concat("/stream");
 
         return webClient
                 .get()
                 .uri(url)
+                // long lived response with idle gaps between items, no read timeout
+                .httpRequest(httpRequest -> httpRequest.<HttpClientRequest>getNativeRequest()
+                        .responseTimeout(Duration.ZERO))
                 .retrieve()
-                .bodyToFlux(MovieInfo.class)
-                //.retry(3)
-                .retryWhen(RetryUtil.retrySpec())
+                .bodyToFlux(StreamedMovieInfo.class)
+                .doOnNext(streamed -> {
+                    if (streamed.getSequence() != null) {
+                        lastStreamSequence.set(streamed.getSequence());
+                    }
+                    if (streamed.isDelete()) {
+                        validatedMovieInfos.invalidate(streamed.getMovieInfo().getMovieInfoId());
+                    }
+                })
                 .log();
     }
+
+    // a movie info of the stream with the type and the sequence of its event, a delete only carries the id
+    @Data
+    @NoArgsConstructor
+    private static final class StreamedMovieInfo {
+
+        @JsonUnwrapped
+        private MovieInfo movieInfo;
+        private String type;
+        private Long sequence;
+
+        boolean isDelete() {
+            return "DELETE".equals(type);
+        }
+    }
+
+    private static final class CachedMovieInfo {
+
+        private final MovieInfo movieInfo;
+        private final String eTag;
+
+        CachedMovieInfo(MovieInfo movieInfo, String eTag) {
+            this.movieInfo = movieInfo;
+            this.eTag = eTag;
+        }
+    }
 }
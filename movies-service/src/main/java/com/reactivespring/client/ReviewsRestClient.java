@@ -6,9 +6,15 @@ import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.util.DownstreamGuard;
+import com.reactivespring.util.HedgingPolicy;
+import com.reactivespring.util.RetryPolicy;
+import com.reactivespring.util.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -16,27 +22,59 @@ import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.util.List;
+import java.util.function.Function;
+
 @Component
 @Slf4j
 public class ReviewsRestClient {
 
     private WebClient webClient;
+    private SingleFlight<String, List<Review>> singleFlight;
+    private RetryPolicy retryPolicy;
+    private DownstreamGuard downstreamGuard;
+    private HedgingPolicy hedgingPolicy;
 
     @Value("${restClient.reviewUrl}")
     private String reviewUrl;
 
-    public ReviewsRestClient(WebClient webClient) {
+    public ReviewsRestClient(@Qualifier("reviewsWebClient") WebClient webClient,
+                             MeterRegistry meterRegistry,
+                             @Qualifier("reviewsRetryPolicy") RetryPolicy retryPolicy,
+                             @Qualifier("reviewsGuard") DownstreamGuard downstreamGuard,
+                             @Qualifier("reviewsHedgingPolicy") HedgingPolicy hedgingPolicy) {
         this.webClient = webClient;
+        this.singleFlight = new SingleFlight<>("reviews", meterRegistry);
+        this.retryPolicy = retryPolicy;
+        this.downstreamGuard = downstreamGuard;
+        this.hedgingPolicy = hedgingPolicy;
     }
 
     public Flux<Review> retrieveReviews(String movieId) {
-        var url = UriComponentsBuilder.fromHttpUrl(reviewUrl)
+        return singleFlight.execute(movieId, () -> fetchReviews(movieId))
+                .flatMapIterable(Function.identity());
+    }
+
+    /**
+     * Every review of the movie: the reviews service pages them, the pages are read one after the other following
+     * the Link header of each page.
+     */
+    private Mono<List<Review>> fetchReviews(String movieId) {
+        var uri = UriComponentsBuilder.fromHttpUrl(reviewUrl)
                 .queryParam("movieInfoId", movieId)
-                .buildAndExpand().toUriString();
+                .build().toUri();
+
+        return fetchReviewPage(uri)
+                .expand(page -> page.next != null ? fetchReviewPage(page.next) : Mono.empty())
+                .concatMapIterable(page -> page.reviews)
+                .collectList();
+    }
 
+    private Mono<ReviewPage> fetchReviewPage(URI uri) {
         return webClient
                 .get()
-                .uri(url)
+                .uri(uri)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.error("Status code is: {}", clientResponse.statusCode().value());
@@ -50,14 +88,49 @@ public class ReviewsRestClient {
                 })
                 .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
                     log.error("Status code is: {}", clientResponse.statusCode().value());
+                    var retryAfter = RetryPolicy.parseRetryAfter(
+                            clientResponse.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER));
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(responeMessage -> Mono.error(
-                                    new ReviewsServerException("Server exception in the ReviewsService: " + responeMessage)
+                                    new ReviewsServerException("Server exception in the ReviewsService: " + responeMessage,
+                                            retryAfter)
                             ));
                 })
-                .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec())
+                .toEntityList(Review.class)
+                .map(entity -> new ReviewPage(entity.getBody() != null ? entity.getBody() : List.of(),
+                        nextPage(uri, entity.getHeaders().getFirst(HttpHeaders.LINK))))
+                .transformDeferred(downstreamGuard::protect)
+                .transform(hedgingPolicy::hedge)
+                .retryWhen(retryPolicy)
                 .log();
+    }
+
+    /**
+     * The target of the rel="next" link, resolved against the page uri, null on the last page.
+     * The target is already encoded, it is used as is.
+     */
+    private static URI nextPage(URI pageUri, String link) {
+        if (link == null) {
+            return null;
+        }
+        for (var linkValue : link.split(",")) {
+            var start = linkValue.indexOf('<');
+            var end = linkValue.indexOf('>', start + 1);
+            if (start >= 0 && end > start && linkValue.substring(end).contains("rel=\"next\"")) {
+                return pageUri.resolve(linkValue.substring(start + 1, end).trim());
+            }
+        }
+        return null;
+    }
+
+    private static final class ReviewPage {
+
+        private final List<Review> reviews;
+        private final URI next;
 
+        ReviewPage(List<Review> reviews, URI next) {
+            this.reviews = reviews;
+            this.next = next;
+        }
     }
 }
@@ -0,0 +1,28 @@
+package com.reactivespring.config;
+
+import com.reactivespring.util.HedgingPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+public class HedgingConfig {
+
+    @Bean
+    public HedgingPolicy moviesInfoHedgingPolicy(Environment environment, MeterRegistry meterRegistry) {
+        return new HedgingPolicy("moviesInfo", hedgingProperties(environment, "moviesInfo"), meterRegistry);
+    }
+
+    @Bean
+    public HedgingPolicy reviewsHedgingPolicy(Environment environment, MeterRegistry meterRegistry) {
+        return new HedgingPolicy("reviews", hedgingProperties(environment, "reviews"), meterRegistry);
+    }
+
+    private static HedgingProperties hedgingProperties(Environment environment, String client) {
+        return Binder.get(environment)
+                .bind("restClient." + client + ".hedging", HedgingProperties.class)
+                .orElseGet(HedgingProperties::new);
+    }
+}
@@ -0,0 +1,21 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Hedging settings of one downstream, bound from restClient.{client}.hedging.
+ */
+@Data
+public class HedgingProperties {
+
+    private boolean enabled = false;
+    private double percentile = 95;
+    private int minSamples = 20;
+    private Duration minDelay = Duration.ofMillis(50);
+    private Duration maxDelay = Duration.ofSeconds(1);
+    private double budgetRatio = 0.1;
+    private int budgetMinPerSecond = 1;
+    private Duration budgetWindow = Duration.ofSeconds(10);
+}
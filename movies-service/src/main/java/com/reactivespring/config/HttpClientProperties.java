@@ -0,0 +1,28 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Connection pool and timeout settings of one downstream, bound from restClient.{client}.http.
+ */
+@Data
+public class HttpClientProperties {
+
+    private int maxConnections = 200;
+    // requests waiting for a connection, beyond this they fail fast instead of queueing
+    private int pendingAcquireMaxCount = 400;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+    private Duration evictInBackground = Duration.ofSeconds(30);
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    // max time between two reads of a response, streaming requests opt out
+    private Duration readTimeout = Duration.ofSeconds(5);
+    private Duration writeTimeout = Duration.ofSeconds(5);
+    private boolean keepAlive = true;
+    // run on the event loop of the server instead of a dedicated one
+    private boolean shareServerEventLoop = true;
+    private int eventLoopThreads = 0;
+}
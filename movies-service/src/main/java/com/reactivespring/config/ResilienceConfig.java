@@ -0,0 +1,82 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.ReviewsClientException;
+import com.reactivespring.util.DownstreamGuard;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+@Configuration
+public class ResilienceConfig {
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(MeterRegistry meterRegistry) {
+        var circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        return circuitBreakerRegistry;
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry(MeterRegistry meterRegistry) {
+        var bulkheadRegistry = BulkheadRegistry.ofDefaults();
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+        return bulkheadRegistry;
+    }
+
+    @Bean
+    public DownstreamGuard moviesInfoGuard(Environment environment, CircuitBreakerRegistry circuitBreakerRegistry,
+                                           BulkheadRegistry bulkheadRegistry) {
+        return downstreamGuard("moviesInfo", environment, circuitBreakerRegistry, bulkheadRegistry);
+    }
+
+    @Bean
+    public DownstreamGuard reviewsGuard(Environment environment, CircuitBreakerRegistry circuitBreakerRegistry,
+                                        BulkheadRegistry bulkheadRegistry) {
+        return downstreamGuard("reviews", environment, circuitBreakerRegistry, bulkheadRegistry);
+    }
+
+    private static DownstreamGuard downstreamGuard(String client, Environment environment,
+                                                   CircuitBreakerRegistry circuitBreakerRegistry,
+                                                   BulkheadRegistry bulkheadRegistry) {
+        var properties = Binder.get(environment)
+                .bind("restClient." + client + ".resilience", ResilienceProperties.class)
+                .orElseGet(ResilienceProperties::new);
+
+        var circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(properties.getSlidingWindowSize())
+                .minimumNumberOfCalls(properties.getMinimumNumberOfCalls())
+                .failureRateThreshold(properties.getFailureRateThreshold())
+                .slowCallRateThreshold(properties.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(properties.getSlowCallDurationThreshold())
+                .waitDurationInOpenState(properties.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(properties.getPermittedNumberOfCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // 4xx responses and local rejections say nothing about the health of the downstream
+                .ignoreExceptions(MoviesInfoClientException.class, ReviewsClientException.class,
+                        BulkheadFullException.class)
+                .build();
+
+        // never wait for a permit, waiting would block the event loop
+        var bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(properties.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+
+        return new DownstreamGuard(client,
+                circuitBreakerRegistry.circuitBreaker(client, circuitBreakerConfig),
+                bulkheadRegistry.bulkhead(client, bulkheadConfig));
+    }
+}
@@ -0,0 +1,21 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker and bulkhead settings of one downstream, bound from restClient.{client}.resilience.
+ */
+@Data
+public class ResilienceProperties {
+
+    private int slidingWindowSize = 50;
+    private int minimumNumberOfCalls = 20;
+    private float failureRateThreshold = 50;
+    private float slowCallRateThreshold = 80;
+    private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+    private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+    private int permittedNumberOfCallsInHalfOpenState = 5;
+    private int maxConcurrentCalls = 100;
+}
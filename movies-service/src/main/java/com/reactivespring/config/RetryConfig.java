@@ -0,0 +1,36 @@
+package com.reactivespring.config;
+
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.RetryPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+@Configuration
+public class RetryConfig {
+
+    @Bean
+    public RetryPolicy moviesInfoRetryPolicy(Environment environment, MeterRegistry meterRegistry) {
+        return new RetryPolicy("moviesInfo", retryProperties(environment, "moviesInfo"),
+                ex -> ex instanceof MoviesInfoServerException,
+                ex -> ex instanceof MoviesInfoServerException ? ((MoviesInfoServerException) ex).getRetryAfter() : null,
+                meterRegistry);
+    }
+
+    @Bean
+    public RetryPolicy reviewsRetryPolicy(Environment environment, MeterRegistry meterRegistry) {
+        return new RetryPolicy("reviews", retryProperties(environment, "reviews"),
+                ex -> ex instanceof ReviewsServerException,
+                ex -> ex instanceof ReviewsServerException ? ((ReviewsServerException) ex).getRetryAfter() : null,
+                meterRegistry);
+    }
+
+    private static RetryProperties retryProperties(Environment environment, String client) {
+        return Binder.get(environment)
+                .bind("restClient." + client + ".retry", RetryProperties.class)
+                .orElseGet(RetryProperties::new);
+    }
+}
@@ -0,0 +1,23 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Retry settings of one downstream, bound from restClient.{client}.retry.
+ */
+@Data
+public class RetryProperties {
+
+    // retries after the first call, so at most maxRetries + 1 calls
+    private int maxRetries = 3;
+    private Duration minBackoff = Duration.ofMillis(100);
+    private Duration maxBackoff = Duration.ofSeconds(2);
+    private Duration maxRetryAfter = Duration.ofSeconds(5);
+    private Duration deadline = Duration.ofSeconds(10);
+    private Duration minRemainingTime = Duration.ofMillis(100);
+    private double budgetRatio = 0.2;
+    private int budgetMinPerSecond = 10;
+    private Duration budgetWindow = Duration.ofSeconds(10);
+}
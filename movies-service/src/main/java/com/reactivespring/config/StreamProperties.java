@@ -0,0 +1,18 @@
+package com.reactivespring.config;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Shared upstream stream settings of one downstream, bound from restClient.{client}.stream.
+ */
+@Data
+public class StreamProperties {
+
+    // how long the upstream stays connected after the last subscriber left
+    private Duration gracePeriod = Duration.ofSeconds(30);
+    private int subscriberBufferSize = 256;
+    private Duration minBackoff = Duration.ofSeconds(1);
+    private Duration maxBackoff = Duration.ofSeconds(30);
+}
@@ -1,14 +1,93 @@
 package com.reactivespring.config;
 
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
 
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One WebClient per downstream, each with its own connection pool.
+ * Pool gauges are published as reactor.netty.connection.provider.{total|active|idle|pending}.connections,
+ * tagged with the client name.
+ */
 @Configuration
 public class WebClientConfig {
 
+    private final List<Disposable> resources = new CopyOnWriteArrayList<>();
+
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient moviesInfoWebClient(WebClient.Builder builder, Environment environment,
+                                         ReactorResourceFactory reactorResourceFactory) {
+        return webClient("moviesInfo", builder, environment, reactorResourceFactory);
+    }
+
+    @Bean
+    public WebClient reviewsWebClient(WebClient.Builder builder, Environment environment,
+                                      ReactorResourceFactory reactorResourceFactory) {
+        return webClient("reviews", builder, environment, reactorResourceFactory);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        resources.forEach(Disposable::dispose);
+    }
+
+    private WebClient webClient(String client, WebClient.Builder builder, Environment environment,
+                                ReactorResourceFactory reactorResourceFactory) {
+        var properties = Binder.get(environment)
+                .bind("restClient." + client + ".http", HttpClientProperties.class)
+                .orElseGet(HttpClientProperties::new);
+
+        var connectionProvider = ConnectionProvider.builder(client)
+                .maxConnections(properties.getMaxConnections())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .evictInBackground(properties.getEvictInBackground())
+                .metrics(true)
+                .build();
+        resources.add(connectionProvider);
+
+        var writeTimeoutMillis = properties.getWriteTimeout().toMillis();
+        var httpClient = HttpClient.create(connectionProvider)
+                .runOn(loopResources(client, properties, reactorResourceFactory))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, properties.isKeepAlive())
+                .responseTimeout(properties.getReadTimeout())
+                // added per request, reactor netty removes it when the connection goes back to the pool
+                .doOnRequest((request, connection) -> connection.addHandlerLast(
+                        new WriteTimeoutHandler(writeTimeoutMillis, TimeUnit.MILLISECONDS)));
+
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    private LoopResources loopResources(String client, HttpClientProperties properties,
+                                        ReactorResourceFactory reactorResourceFactory) {
+        if (properties.isShareServerEventLoop()) {
+            return reactorResourceFactory.getLoopResources();
+        }
+        var threads = properties.getEventLoopThreads() > 0
+                ? properties.getEventLoopThreads()
+                : LoopResources.DEFAULT_IO_WORKER_COUNT;
+        var loopResources = LoopResources.create(client + "-http", threads, true);
+        resources.add(loopResources);
+        return loopResources;
     }
 }
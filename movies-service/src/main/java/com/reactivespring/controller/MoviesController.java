@@ -4,15 +4,19 @@ import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieResult;
+import com.reactivespring.service.MoviesService;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.print.attribute.standard.Media;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/movies")
@@ -20,26 +24,32 @@ public class MoviesController {
 
     private MoviesInfoRestClient moviesInfoRestClient;
     private ReviewsRestClient reviewsRestClient;
+    private MoviesService moviesService;
 
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
+    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                            MoviesService moviesService) {
         this.moviesInfoRestClient = moviesInfoRestClient;
         this.reviewsRestClient = reviewsRestClient;
+        this.moviesService = moviesService;
     }
 
     @GetMapping("/{id}")
     public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId) {
+        return moviesService.retrieveMovieById(movieId);
+    }
 
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
-                .flatMap(movieInfo -> {
-                    var reviewListMono = reviewsRestClient.retrieveReviews(movieId)
-                            .collectList();
-
-                    return reviewListMono.map(reviews -> new Movie(movieInfo, reviews));
-                });
+    @GetMapping(params = "ids", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<MovieResult> retrieveMoviesByIds(@RequestParam("ids") List<String> movieIds) {
+        return moviesService.retrieveMoviesByIds(movieIds);
     }
 
     @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<MovieInfo> retrieveMovieInfos() {
         return moviesInfoRestClient.retrieveMovieInfoStream();
     }
+
+    @GetMapping(value = "/stream", params = "enrich=true", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Movie> retrieveEnrichedMovieStream() {
+        return moviesService.retrieveEnrichedMovieStream();
+    }
 }
@@ -1,11 +1,23 @@
 package com.reactivespring.exception;
 
+import java.time.Duration;
+
 public class MoviesInfoServerException extends RuntimeException{
     private String message;
+    private Duration retryAfter;
 
 
     public MoviesInfoServerException(String message) {
         super(message);
         this.message = message;
     }
+
+    public MoviesInfoServerException(String message, Duration retryAfter) {
+        this(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
 }
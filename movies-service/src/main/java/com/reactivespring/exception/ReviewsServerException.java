@@ -1,10 +1,22 @@
 package com.reactivespring.exception;
 
+import java.time.Duration;
+
 public class ReviewsServerException extends RuntimeException{
     private String message;
+    private Duration retryAfter;
 
     public ReviewsServerException(String message) {
         super(message);
         this.message = message;
     }
+
+    public ReviewsServerException(String message, Duration retryAfter) {
+        this(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
 }
@@ -0,0 +1,178 @@
+package com.reactivespring.service;
+
+import com.reactivespring.cache.MovieCache;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.client.ReviewsRestClient;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieResult;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+@Service
+@Slf4j
+public class MoviesService {
+
+    public enum CompositionMode {
+        SEQUENTIAL,
+        CONCURRENT
+    }
+
+    private MoviesInfoRestClient moviesInfoRestClient;
+    private ReviewsRestClient reviewsRestClient;
+    private MovieCache movieCache;
+    private Counter streamDroppedCounter;
+    private Counter streamEnrichmentFallbackCounter;
+
+    @Value("${movies.compositionMode:CONCURRENT}")
+    private CompositionMode compositionMode;
+
+    @Value("${movies.batch.concurrency:8}")
+    private int batchConcurrency;
+
+    @Value("${movies.batch.maxIds:100}")
+    private int batchMaxIds;
+
+    @Value("${movies.stream.concurrency:8}")
+    private int streamConcurrency;
+
+    @Value("${movies.stream.enrichmentTimeout:1s}")
+    private Duration streamEnrichmentTimeout;
+
+    @Value("${movies.stream.bufferSize:256}")
+    private int streamBufferSize;
+
+    // DROP_OLDEST | DROP_LATEST | ERROR
+    @Value("${movies.stream.overflowStrategy:DROP_OLDEST}")
+    private BufferOverflowStrategy streamOverflowStrategy;
+
+    public MoviesService(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                         MovieCache movieCache, MeterRegistry meterRegistry) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.reviewsRestClient = reviewsRestClient;
+        this.movieCache = movieCache;
+        this.streamDroppedCounter = meterRegistry.counter("movies.stream.dropped");
+        this.streamEnrichmentFallbackCounter = meterRegistry.counter("movies.stream.enrichment.fallbacks");
+    }
+
+    public Mono<Movie> retrieveMovieById(String movieId) {
+        return movieCache.get(movieId, this::loadMovieById);
+    }
+
+    private Mono<Movie> loadMovieById(String movieId) {
+        if (compositionMode == CompositionMode.SEQUENTIAL) {
+            return retrieveMovieSequentially(movieId);
+        }
+        return retrieveMovieConcurrently(movieId);
+    }
+
+    /**
+     * Looks up every distinct id with at most movies.batch.concurrency lookups in flight.
+     * Results are emitted in request order and a failing id is reported in its own result instead of failing the batch.
+     */
+    public Flux<MovieResult> retrieveMoviesByIds(List<String> movieIds) {
+        var distinctIds = new LinkedHashSet<String>();
+        movieIds.stream()
+                .map(String::trim)
+                .filter(movieId -> !movieId.isEmpty())
+                .forEach(distinctIds::add);
+
+        if (distinctIds.isEmpty()) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids must be present"));
+        }
+        if (distinctIds.size() > batchMaxIds) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ids can not contain more than " + batchMaxIds + " distinct values"));
+        }
+
+        return Flux.fromIterable(distinctIds)
+                .flatMapSequential(this::retrieveMovieResult, batchConcurrency);
+    }
+
+    /**
+     * Live stream of movie infos, each one enriched with its reviews.
+     * At most movies.stream.concurrency enrichments run at once and the output keeps the order of the stream.
+     * An enrichment that fails or exceeds movies.stream.enrichmentTimeout emits the movie with no reviews,
+     * so one slow review lookup holds the stream back by at most the timeout.
+     * Movie infos arriving while the client is not keeping up are buffered up to movies.stream.bufferSize,
+     * after which movies.stream.overflowStrategy applies.
+     */
+    public Flux<Movie> retrieveEnrichedMovieStream() {
+        return moviesInfoRestClient.retrieveMovieInfoStream()
+                .onBackpressureBuffer(streamBufferSize, movieInfo -> {
+                    log.warn("Stream client is falling behind, dropped the movie info: {}", movieInfo.getMovieInfoId());
+                    streamDroppedCounter.increment();
+                }, streamOverflowStrategy)
+                .flatMapSequential(this::enrichMovieInfo, streamConcurrency);
+    }
+
+    private Mono<Movie> enrichMovieInfo(MovieInfo movieInfo) {
+        if (movieInfo.getMovieInfoId() == null) {
+            return Mono.just(new Movie(movieInfo, List.of()));
+        }
+        return reviewsRestClient.retrieveReviews(movieInfo.getMovieInfoId())
+                .collectList()
+                .timeout(streamEnrichmentTimeout)
+                .onErrorResume(ex -> {
+                    log.warn("Reviews unavailable for the streamed movie id: {}", movieInfo.getMovieInfoId(), ex);
+                    streamEnrichmentFallbackCounter.increment();
+                    return Mono.just(List.of());
+                })
+                .map(reviews -> new Movie(movieInfo, reviews));
+    }
+
+    private Mono<MovieResult> retrieveMovieResult(String movieId) {
+        return retrieveMovieById(movieId)
+                .map(movie -> MovieResult.success(movieId, movie))
+                .switchIfEmpty(Mono.fromSupplier(() -> MovieResult.failure(movieId, HttpStatus.NOT_FOUND.value(),
+                        "There is no movie info available for the passed id: " + movieId)))
+                .onErrorResume(ex -> {
+                    log.error("Exception caught while retrieving the movie id: {}", movieId, ex);
+                    if (ex instanceof MoviesInfoClientException) {
+                        return Mono.just(MovieResult.failure(movieId,
+                                ((MoviesInfoClientException) ex).getStatusCode(), ex.getMessage()));
+                    }
+                    return Mono.just(MovieResult.failure(movieId, HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                            ex.getMessage()));
+                });
+    }
+
+    /**
+     * Reviews are only requested once the movie info is available, so the latency is the sum of both calls.
+     */
+    private Mono<Movie> retrieveMovieSequentially(String movieId) {
+        return moviesInfoRestClient.retrieveMovieInfo(movieId)
+                .flatMap(movieInfo -> {
+                    var reviewListMono = reviewsRestClient.retrieveReviews(movieId)
+                            .collectList();
+
+                    return reviewListMono.map(reviews -> new Movie(movieInfo, reviews));
+                });
+    }
+
+    /**
+     * Both calls are subscribed at once, so the latency is the max of both calls.
+     * Mono.zip cancels the reviews call as soon as the movie info call errors (404, 5xx) or completes empty.
+     */
+    private Mono<Movie> retrieveMovieConcurrently(String movieId) {
+        var movieInfoMono = moviesInfoRestClient.retrieveMovieInfo(movieId);
+        var reviewListMono = reviewsRestClient.retrieveReviews(movieId)
+                .collectList()
+                .doOnCancel(() -> log.debug("Reviews call cancelled for the movie id: {}", movieId));
+
+        return Mono.zip(movieInfoMono, reviewListMono, Movie::new);
+    }
+}
@@ -0,0 +1,52 @@
+package com.reactivespring.util;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit breaker and concurrency limiting bulkhead of one downstream.
+ * The circuit breaker is the outer operator, so every attempt is checked by it first: a call rejected by an open
+ * circuit breaker never takes a bulkhead permit, and a call then rejected by the bulkhead never reaches the
+ * downstream. Bulkhead rejections are ignored by the circuit breaker, they do not count as downstream failures.
+ */
+public class DownstreamGuard {
+
+    private final String name;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final LongAdder bulkheadRejections = new LongAdder();
+
+    public DownstreamGuard(String name, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        this.name = name;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.bulkhead.getEventPublisher().onCallRejected(event -> bulkheadRejections.increment());
+    }
+
+    public <T> Mono<T> protect(Mono<T> call) {
+        return call
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public long getBulkheadRejections() {
+        return bulkheadRejections.sum();
+    }
+}
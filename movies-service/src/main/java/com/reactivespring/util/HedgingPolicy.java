@@ -0,0 +1,118 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.HedgingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hedged requests for one downstream: when the call has not answered within the configured latency percentile,
+ * an identical second call is subscribed and the first one to answer wins, the other one being cancelled.
+ * A call failing while the other one is still running does not end the race; the error of the first call is
+ * propagated when both fail. A first call failing before the delay is not hedged.
+ * The delay is the percentile of the latencies of the first calls, the calls won by a hedge are left out.
+ * Hedges are capped by a {@link RequestBudget}. Only use it with idempotent calls, such as GETs.
+ */
+@Slf4j
+public class HedgingPolicy {
+
+    private final String client;
+    private final HedgingProperties properties;
+    private final LatencyTracker latencyTracker = new LatencyTracker(256);
+    private final RequestBudget budget;
+    private final Counter hedgesCounter;
+    private final Counter hedgeWinsCounter;
+    private final Counter budgetExhaustedCounter;
+
+    public HedgingPolicy(String client, HedgingProperties properties, MeterRegistry meterRegistry) {
+        this.client = client;
+        this.properties = properties;
+        this.budget = new RequestBudget(properties.getBudgetRatio(), properties.getBudgetMinPerSecond(),
+                properties.getBudgetWindow());
+        this.hedgesCounter = Counter.builder("restClient.hedge.requests")
+                .tag("client", client)
+                .register(meterRegistry);
+        this.hedgeWinsCounter = Counter.builder("restClient.hedge.wins")
+                .tag("client", client)
+                .register(meterRegistry);
+        this.budgetExhaustedCounter = Counter.builder("restClient.hedge.budget.exhausted")
+                .tag("client", client)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The call must be cold: every subscription issues a new request.
+     */
+    public <T> Mono<T> hedge(Mono<T> call) {
+        if (!properties.isEnabled()) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            budget.recordRequest();
+            var start = System.nanoTime();
+            var delay = hedgeDelay();
+
+            var primaryError = new AtomicReference<Throwable>();
+            var primaryFailed = Sinks.<Long>empty();
+            // an empty answer is an answer too, wrapped so that it wins the race like a value
+            var primaryCall = call
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .doOnSuccess(value -> recordLatency(start))
+                    .doOnError(e -> {
+                        primaryError.set(e);
+                        primaryFailed.tryEmitEmpty();
+                    });
+
+            var hedgedCall = Mono.delay(delay)
+                    .or(primaryFailed.asMono())
+                    .flatMap(tick -> {
+                        if (!budget.tryAcquire()) {
+                            budgetExhaustedCounter.increment();
+                            return Mono.<Optional<T>>empty();
+                        }
+                        log.debug("{}: no answer after {}, sending a hedged request", client, delay);
+                        hedgesCounter.increment();
+                        return call
+                                .doOnNext(value -> hedgeWinsCounter.increment())
+                                .map(Optional::of)
+                                .defaultIfEmpty(Optional.empty());
+                    });
+
+            return Mono.firstWithValue(primaryCall, hedgedCall)
+                    // no call answered: propagate the error of the first call, not the one of the race
+                    .onErrorMap(NoSuchElementException.class,
+                            e -> primaryError.get() != null ? primaryError.get() : e)
+                    .flatMap(Mono::justOrEmpty);
+        });
+    }
+
+    /*
+     * Only the answers of the first call are sampled: the answer of a winning hedge, subscribed after the delay,
+     * would pull the delay down, hedging more calls and winning more often.
+     */
+    private void recordLatency(long start) {
+        latencyTracker.record(Duration.ofNanos(System.nanoTime() - start).toMillis());
+    }
+
+    Duration hedgeDelay() {
+        if (latencyTracker.count() < properties.getMinSamples()) {
+            return properties.getMaxDelay();
+        }
+        var delay = Duration.ofMillis(latencyTracker.percentile(properties.getPercentile()));
+        if (delay.compareTo(properties.getMinDelay()) < 0) {
+            return properties.getMinDelay();
+        }
+        if (delay.compareTo(properties.getMaxDelay()) > 0) {
+            return properties.getMaxDelay();
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,43 @@
+package com.reactivespring.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latest latency samples in a ring buffer and computes percentiles over them.
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int count;
+    private int next;
+
+    public LatencyTracker(int size) {
+        this.samples = new long[size];
+    }
+
+    public synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * Returns the given percentile (0-100) of the recorded samples, or -1 when there are no samples.
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        var index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,66 @@
+package com.reactivespring.util;
+
+import java.time.Duration;
+
+/**
+ * Caps the extra attempts (retries, hedges) sent to a downstream at a ratio of the requests seen in a sliding window,
+ * plus a small per second reserve so that low traffic callers can still retry.
+ * The window is split in one second buckets that are recycled as time moves on.
+ */
+public class RequestBudget {
+
+    private final double ratio;
+    private final int minPerSecond;
+    private final long[] requests;
+    private final long[] extraAttempts;
+    private final long[] bucketSeconds;
+
+    public RequestBudget(double ratio, int minPerSecond, Duration window) {
+        var buckets = (int) Math.max(1, window.getSeconds());
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        this.requests = new long[buckets];
+        this.extraAttempts = new long[buckets];
+        this.bucketSeconds = new long[buckets];
+    }
+
+    public synchronized void recordRequest() {
+        requests[bucket(currentSecond())]++;
+    }
+
+    /**
+     * Returns true and records the extra attempt if the budget allows it.
+     */
+    public synchronized boolean tryAcquire() {
+        var nowSecond = currentSecond();
+        var index = bucket(nowSecond);
+        long windowRequests = 0;
+        long windowExtraAttempts = 0;
+        for (int i = 0; i < requests.length; i++) {
+            if (nowSecond - bucketSeconds[i] < requests.length) {
+                windowRequests += requests[i];
+                windowExtraAttempts += extraAttempts[i];
+            }
+        }
+        var allowed = (long) (windowRequests * ratio) + (long) minPerSecond * requests.length;
+        if (windowExtraAttempts >= allowed) {
+            return false;
+        }
+        extraAttempts[index]++;
+        return true;
+    }
+
+    private int bucket(long second) {
+        var index = (int) (second % requests.length);
+        if (bucketSeconds[index] != second) {
+            bucketSeconds[index] = second;
+            requests[index] = 0;
+            extraAttempts[index] = 0;
+        }
+        return index;
+    }
+
+    long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
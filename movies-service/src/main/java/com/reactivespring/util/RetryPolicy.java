@@ -0,0 +1,147 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RetryProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Retry policy of one downstream:
+ * exponential backoff with full jitter, a retry budget shared by all the calls to the downstream,
+ * Retry-After honoring and a deadline after which no further attempt is made.
+ * The deadline is the earliest of the configured per call deadline and the {@link #DEADLINE_KEY} Instant
+ * found in the subscriber context.
+ */
+@Slf4j
+public class RetryPolicy extends Retry {
+
+    public static final String DEADLINE_KEY = "restClient.deadline";
+
+    private final String client;
+    private final RetryProperties properties;
+    private final Predicate<Throwable> retryable;
+    private final Function<Throwable, Duration> retryAfter;
+    private final RequestBudget budget;
+    private final Counter attemptsCounter;
+    private final Counter budgetExhaustedCounter;
+    private final Counter deadlineExceededCounter;
+    private final Counter retryAfterExceededCounter;
+
+    public RetryPolicy(String client, RetryProperties properties, Predicate<Throwable> retryable,
+                       Function<Throwable, Duration> retryAfter, MeterRegistry meterRegistry) {
+        this.client = client;
+        this.properties = properties;
+        this.retryable = retryable;
+        this.retryAfter = retryAfter;
+        this.budget = new RequestBudget(properties.getBudgetRatio(), properties.getBudgetMinPerSecond(),
+                properties.getBudgetWindow());
+        this.attemptsCounter = Counter.builder("restClient.retry.attempts")
+                .tag("client", client)
+                .register(meterRegistry);
+        this.budgetExhaustedCounter = Counter.builder("restClient.retry.exhausted")
+                .tag("client", client)
+                .tag("reason", "budget")
+                .register(meterRegistry);
+        this.deadlineExceededCounter = Counter.builder("restClient.retry.exhausted")
+                .tag("client", client)
+                .tag("reason", "deadline")
+                .register(meterRegistry);
+        this.retryAfterExceededCounter = Counter.builder("restClient.retry.exhausted")
+                .tag("client", client)
+                .tag("reason", "retryAfter")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Publisher<?> generateCompanion(Flux<RetrySignal> retrySignals) {
+        // invoked once per subscription, so once per logical request
+        budget.recordRequest();
+        var callDeadline = Instant.now().plus(properties.getDeadline());
+
+        return Flux.deferContextual(contextView -> {
+            var deadline = contextView.<Instant>getOrEmpty(DEADLINE_KEY)
+                    .filter(contextDeadline -> contextDeadline.isBefore(callDeadline))
+                    .orElse(callDeadline);
+            return retrySignals.concatMap(retrySignal -> nextAttempt(retrySignal.copy(), deadline));
+        });
+    }
+
+    private Mono<Long> nextAttempt(RetrySignal retrySignal, Instant deadline) {
+        var failure = retrySignal.failure();
+        if (!retryable.test(failure) || retrySignal.totalRetries() >= properties.getMaxRetries()) {
+            return Mono.error(failure);
+        }
+
+        var delay = backoff(retrySignal.totalRetries());
+        var serverDelay = retryAfter.apply(failure);
+        if (serverDelay != null) {
+            if (serverDelay.compareTo(properties.getMaxRetryAfter()) > 0) {
+                log.warn("{}: Retry-After of {} exceeds the maximum of {}, giving up",
+                        client, serverDelay, properties.getMaxRetryAfter());
+                retryAfterExceededCounter.increment();
+                return Mono.error(failure);
+            }
+            delay = serverDelay.compareTo(delay) > 0 ? serverDelay : delay;
+        }
+
+        var remaining = Duration.between(Instant.now(), deadline);
+        if (remaining.minus(delay).compareTo(properties.getMinRemainingTime()) < 0) {
+            log.warn("{}: remaining deadline of {} can not cover another attempt, giving up", client, remaining);
+            deadlineExceededCounter.increment();
+            return Mono.error(failure);
+        }
+        if (!budget.tryAcquire()) {
+            log.warn("{}: retry budget exhausted, giving up", client);
+            budgetExhaustedCounter.increment();
+            return Mono.error(failure);
+        }
+
+        attemptsCounter.increment();
+        log.info("{}: retry attempt {} in {}", client, retrySignal.totalRetries() + 1, delay);
+        return Mono.delay(delay).thenReturn(retrySignal.totalRetries());
+    }
+
+    /**
+     * Full jitter: a random delay between 0 and min(maxBackoff, minBackoff * 2^retries).
+     */
+    Duration backoff(long retries) {
+        var minBackoff = properties.getMinBackoff().toMillis();
+        var maxBackoff = properties.getMaxBackoff().toMillis();
+        var ceiling = retries >= 30 ? maxBackoff : Math.min(maxBackoff, minBackoff * (1L << retries));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    /**
+     * Parses a Retry-After header, either delay-seconds or an HTTP date.
+     */
+    public static Duration parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException ex) {
+            try {
+                var date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                var delay = Duration.between(Instant.now(), date.toInstant());
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException parseException) {
+                log.warn("Invalid Retry-After header: {}", retryAfter);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.StreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multicasts one upstream subscription to every local subscriber.
+ * The upstream is connected by the first subscriber and disconnected once the last one has been gone for the
+ * grace period. It is reconnected with a backoff when it errors or completes.
+ * Every subscriber gets its own bounded buffer that drops the oldest items, so a slow subscriber neither holds back
+ * the others nor the upstream.
+ */
+@Slf4j
+public class SharedStream<T> {
+
+    private final Flux<T> shared;
+    private final int subscriberBufferSize;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Counter droppedCounter;
+
+    public SharedStream(String name, Flux<T> source, StreamProperties properties, MeterRegistry meterRegistry) {
+        this.subscriberBufferSize = properties.getSubscriberBufferSize();
+        var connectionsCounter = Counter.builder("restClient.stream.connections")
+                .tag("client", name)
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("restClient.stream.dropped")
+                .tag("client", name)
+                .register(meterRegistry);
+        Gauge.builder("restClient.stream.subscribers", subscribers, AtomicInteger::get)
+                .tag("client", name)
+                .register(meterRegistry);
+
+        this.shared = Flux.defer(() -> {
+                    log.info("{}: connecting the upstream stream", name);
+                    connectionsCounter.increment();
+                    return source;
+                })
+                .repeatWhen(completed -> completed.delayElements(properties.getMinBackoff()))
+                // transient errors: the backoff starts over once the upstream emits again
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, properties.getMinBackoff())
+                        .maxBackoff(properties.getMaxBackoff())
+                        .transientErrors(true)
+                        .doBeforeRetry(retrySignal ->
+                                log.warn("{}: upstream stream failed, reconnecting: {}", name,
+                                        retrySignal.failure().getMessage())))
+                .publish()
+                .refCount(1, properties.getGracePeriod());
+    }
+
+    public Flux<T> stream() {
+        return shared
+                .onBackpressureBuffer(subscriberBufferSize, dropped -> droppedCounter.increment(),
+                        BufferOverflowStrategy.DROP_OLDEST)
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signalType -> subscribers.decrementAndGet());
+    }
+
+    public int subscriberCount() {
+        return subscribers.get();
+    }
+}
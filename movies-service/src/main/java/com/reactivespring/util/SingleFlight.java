@@ -0,0 +1,110 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one in-flight call.
+ * The first caller (leader) triggers the call, callers arriving while it is in flight share its result,
+ * and the entry is dropped once the call terminates so the next caller triggers a fresh call.
+ * A caller joining just as the call terminates gets its result, the call is never issued twice for one flight.
+ * The call is ref counted: it is only cancelled once every caller sharing it has cancelled.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Flight> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaderCounter;
+    private final Counter coalescedCounter;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.leaderCounter = Counter.builder("restClient.singleflight.calls")
+                .tag("client", name)
+                .tag("role", "leader")
+                .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("restClient.singleflight.calls")
+                .tag("client", name)
+                .tag("role", "coalesced")
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.defer(() -> {
+            // prepared outside of the map, the call itself is only built by the leader once it joins
+            var flight = new Flight(key, call);
+            var shared = inFlight.putIfAbsent(key, flight);
+            if (shared == null) {
+                leaderCounter.increment();
+                shared = flight;
+            } else {
+                coalescedCounter.increment();
+            }
+            var result = shared.join();
+            // every caller of the shared flight cancelled in between, it is on its way out of the map
+            return result != null ? result : execute(key, call);
+        });
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private final class Flight {
+
+        private final K key;
+        private final Supplier<Mono<V>> call;
+        // the outcome of the call, replayed to the callers joining once it is known
+        private final Sinks.One<V> result = Sinks.one();
+        private final Disposable.Swap subscription = Disposables.swap();
+
+        // guarded by this
+        private int callers;
+        private boolean started;
+        private boolean cancelled;
+
+        Flight(K key, Supplier<Mono<V>> call) {
+            this.key = key;
+            this.call = call;
+        }
+
+        /**
+         * The result of the call for a new caller, null once every caller cancelled.
+         */
+        Mono<V> join() {
+            boolean start;
+            synchronized (this) {
+                if (cancelled) {
+                    return null;
+                }
+                callers++;
+                start = !started;
+                started = true;
+            }
+            if (start) {
+                subscription.update(Mono.defer(call)
+                        .doFinally(signalType -> inFlight.remove(key, this))
+                        .subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty));
+            }
+            return result.asMono()
+                    .doOnCancel(this::leave);
+        }
+
+        private void leave() {
+            synchronized (this) {
+                if (--callers > 0) {
+                    return;
+                }
+                cancelled = true;
+            }
+            inFlight.remove(key, this);
+            subscription.dispose();
+        }
+    }
+}
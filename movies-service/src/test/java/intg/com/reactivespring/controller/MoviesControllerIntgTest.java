@@ -2,19 +2,26 @@ package com.reactivespring.controller;
 
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieResult;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.Objects;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -23,7 +30,10 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 @TestPropertySource(
         properties = {
                 "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
-                "restClient.reviewUrl=http://localhost:8084/v1/reviews"
+                "restClient.reviewUrl=http://localhost:8084/v1/reviews",
+                "movies.cache.enabled=false",
+                "movies.stream.enrichmentTimeout=500ms",
+                "restClient.moviesInfo.stream.gracePeriod=10ms"
         }
 )
 public class MoviesControllerIntgTest {
@@ -59,6 +69,78 @@ public class MoviesControllerIntgTest {
                 });
     }
 
+    @Test
+    void retrieveMovieById_reviewsPaged() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("Link", "<http://localhost:8084/v1/reviews?movieInfoId=" + movieId
+                                + "&after=Xy0_>; rel=\"next\"")
+                        .withBodyFile("reviews.json")));
+
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=" + movieId + "&after=Xy0_"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assertEquals(4, Objects.requireNonNull(movie).getReviewList().size());
+                });
+
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
+
+    @Test
+    void retrieveMovieById_revalidated() {
+        var movieId = "revalidated";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"1\"")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .withHeader("If-None-Match", equalTo("\"1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"1\"")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient
+                    .get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(Movie.class)
+                    .consumeWith(movieEntityExchangeResult ->
+                            assertEquals("Batman Begins", movieEntityExchangeResult.getResponseBody().getMovieInfo().getName()));
+        }
+
+        WireMock.verify(2, getRequestedFor(urlEqualTo("/v1/movieinfos" + "/" + movieId)));
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .withHeader("If-None-Match", equalTo("\"1\"")));
+    }
+
     @Test
     void retrieveMovieById_404() {
         var movieId = "abc";
@@ -167,4 +249,197 @@ public class MoviesControllerIntgTest {
 
         WireMock.verify(4, getRequestedFor(urlPathMatching("/v1/reviews*")));
     }
+
+    @Test
+    void retrieveMovieById_concurrentLatency() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(1000)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(1000)));
+
+        var start = System.nanoTime();
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    var movie = movieEntityExchangeResult.getResponseBody();
+                    assert Objects.requireNonNull(movie).getReviewList().size() == 2;
+                });
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // sequential composition would take at least 2 seconds
+        assertTrue(elapsed.compareTo(Duration.ofMillis(1800)) < 0, "elapsed: " + elapsed);
+    }
+
+    @Test
+    void retrieveMovieById_404_cancelsReviews() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(2000)));
+
+        var start = System.nanoTime();
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertTrue(elapsed.compareTo(Duration.ofMillis(1500)) < 0, "elapsed: " + elapsed);
+    }
+
+    @Test
+    void retrieveMoviesByIds() {
+        stubFor(get(urlEqualTo("/v1/movieinfos/abc"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/def"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        webTestClient
+                .get()
+                .uri("/v1/movies?ids={ids}", "abc,def,abc")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(MovieResult.class)
+                .consumeWith(result -> {
+                    var movieResults = Objects.requireNonNull(result.getResponseBody());
+                    assertEquals(2, movieResults.size());
+                    assertEquals("abc", movieResults.get(0).getMovieId());
+                    assertEquals(200, movieResults.get(0).getStatus());
+                    assertEquals("Batman Begins", movieResults.get(0).getMovie().getMovieInfo().getName());
+                    assertEquals("def", movieResults.get(1).getMovieId());
+                    assertEquals(404, movieResults.get(1).getStatus());
+                });
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/abc")));
+    }
+
+    @Test
+    void retrieveEnrichedMovieStream() {
+        stubFor(get(urlEqualTo("/v1/movieinfos/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005}\n"
+                                + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008}\n")));
+
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        // slower than movies.stream.enrichmentTimeout
+        stubFor(get(urlEqualTo("/v1/reviews?movieInfoId=2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                        .withFixedDelay(3000)));
+
+        // the upstream is reconnected once it completes, so the stream never completes
+        var movieFlux = webTestClient
+                .get()
+                .uri("/v1/movies/stream?enrich=true")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(Movie.class)
+                .getResponseBody();
+
+        StepVerifier.create(movieFlux)
+                .assertNext(movie -> {
+                    assertEquals("1", movie.getMovieInfo().getMovieInfoId());
+                    assertEquals(2, movie.getReviewList().size());
+                })
+                .assertNext(movie -> {
+                    assertEquals("2", movie.getMovieInfo().getMovieInfoId());
+                    assertEquals(0, movie.getReviewList().size());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    // the client keeps the last sequence
+    @DirtiesContext
+    void retrieveMovieInfos_reconnectsAfterLastSequence() {
+        stubFor(get(urlEqualTo("/v1/movieinfos/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005,\"sequence\":1}\n"
+                                + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008,\"sequence\":2}\n")));
+
+        stubFor(get(urlEqualTo("/v1/movieinfos/stream?after=2"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"movieInfoId\":\"3\",\"name\":\"Dark Knight Rises\",\"year\":2012,\"sequence\":3}\n")));
+
+        var movieInfoFlux = webTestClient
+                .get()
+                .uri("/v1/movies/stream")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        // the upstream completes after each body and is reconnected after the last sequence received
+        StepVerifier.create(movieInfoFlux)
+                .assertNext(movieInfo -> assertEquals("1", movieInfo.getMovieInfoId()))
+                .assertNext(movieInfo -> assertEquals("2", movieInfo.getMovieInfoId()))
+                .assertNext(movieInfo -> assertEquals("3", movieInfo.getMovieInfoId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos/stream")));
+    }
+
+    @Test
+    void retrieveMovieInfos_skipsDeletes() {
+        stubFor(get(urlEqualTo("/v1/movieinfos/stream"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", MediaType.APPLICATION_NDJSON_VALUE)
+                        .withBody("{\"movieInfoId\":\"1\",\"type\":\"DELETE\"}\n"
+                                + "{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008,\"type\":\"INSERT\"}\n")));
+
+        var movieInfoFlux = webTestClient
+                .get()
+                .uri("/v1/movies/stream")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(MovieInfo.class)
+                .getResponseBody();
+
+        StepVerifier.create(movieInfoFlux)
+                .assertNext(movieInfo -> assertEquals("2", movieInfo.getMovieInfoId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
 }
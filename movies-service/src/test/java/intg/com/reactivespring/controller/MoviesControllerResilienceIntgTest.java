@@ -0,0 +1,186 @@
+package com.reactivespring.controller;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.Fault;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:${wiremock.server.port}/v1/movieinfos",
+                "restClient.reviewUrl=http://localhost:${wiremock.server.port}/v1/reviews",
+                "movies.cache.enabled=false",
+                "restClient.moviesInfo.retry.maxRetries=0",
+                "restClient.moviesInfo.resilience.slidingWindowSize=2",
+                "restClient.moviesInfo.resilience.minimumNumberOfCalls=2",
+                "restClient.moviesInfo.resilience.waitDurationInOpenState=1m",
+                "restClient.moviesInfo.resilience.maxConcurrentCalls=1",
+                "restClient.moviesInfo.http.readTimeout=800ms"
+        }
+)
+public class MoviesControllerResilienceIntgTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void retrieveMovieById_circuitBreakerOpens() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withFault(Fault.CONNECTION_RESET_BY_PEER)));
+
+        for (int i = 0; i < 2; i++) {
+            webTestClient
+                    .get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus()
+                    .is5xxServerError();
+        }
+
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(503);
+
+        WireMock.verify(2, getRequestedFor(urlEqualTo("/v1/movieinfos" + "/" + movieId)));
+
+        webTestClient
+                .get()
+                .uri("/actuator/downstreams/{name}", "moviesInfo")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("OPEN")
+                .jsonPath("$.notPermittedCalls").isEqualTo(1);
+    }
+
+    @Test
+    void retrieveMovieById_4xxDoesNotOpenCircuitBreaker() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+
+        for (int i = 0; i < 3; i++) {
+            webTestClient
+                    .get()
+                    .uri("/v1/movies/{id}", movieId)
+                    .exchange()
+                    .expectStatus()
+                    .isNotFound();
+        }
+
+        WireMock.verify(3, getRequestedFor(urlEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieById_bulkheadRejects() {
+        stubFor(get(urlPathMatching("/v1/movieinfos/.*"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(500)));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")));
+
+        // distinct ids, so the calls are not coalesced
+        var webClient = WebClient.create("http://localhost:" + port);
+        var statuses = Flux.just("abc", "def")
+                .flatMap(movieId -> webClient
+                        .get()
+                        .uri("/v1/movies/{id}", movieId)
+                        .exchangeToMono(clientResponse -> clientResponse.releaseBody()
+                                .thenReturn(clientResponse.rawStatusCode())))
+                .collectList()
+                .block();
+
+        assertTrue(statuses.contains(200), "statuses: " + statuses);
+        assertTrue(statuses.contains(503), "statuses: " + statuses);
+        WireMock.verify(1, getRequestedFor(urlPathMatching("/v1/movieinfos/.*")));
+
+        webTestClient
+                .get()
+                .uri("/actuator/downstreams/{name}", "moviesInfo")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.bulkheadRejectedCalls").isEqualTo(1);
+    }
+
+    @Test
+    void retrieveMovieById_readTimeout() {
+        var movieId = "abc";
+
+        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(2000)));
+
+        var start = System.nanoTime();
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .is5xxServerError();
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // failed by the 800ms read timeout, not by the 2s delay of the answer
+        assertTrue(elapsed.compareTo(Duration.ofMillis(800)) >= 0, "elapsed: " + elapsed);
+        assertTrue(elapsed.compareTo(Duration.ofMillis(1800)) < 0, "elapsed: " + elapsed);
+
+        webTestClient
+                .get()
+                .uri("/actuator/downstreams/{name}", "moviesInfo")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.failedCalls").isEqualTo(1);
+
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder
+                        .path("/actuator/metrics/{name}")
+                        .queryParam("tag", "name:moviesInfo")
+                        .build("reactor.netty.connection.provider.total.connections"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+}
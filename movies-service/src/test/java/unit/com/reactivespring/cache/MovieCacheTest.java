@@ -0,0 +1,105 @@
+package com.reactivespring.cache;
+
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MovieCacheTest {
+
+    MoviesInfoRestClient moviesInfoRestClient = mock(MoviesInfoRestClient.class);
+
+    AtomicInteger loads = new AtomicInteger();
+
+    Mono<Movie> load(String movieId) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return new Movie(new MovieInfo(movieId, "Batman Begins", 2005,
+                    List.of("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")), List.of());
+        }).delayElement(Duration.ofMillis(100));
+    }
+
+    MovieCache movieCache(boolean enabled) {
+        return new MovieCache(moviesInfoRestClient, new SimpleMeterRegistry(), enabled, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    void get_concurrentMissesShareOneLoad() {
+        var movieCache = movieCache(true);
+
+        var movies = Flux.range(0, 10)
+                .flatMap(i -> movieCache.get("abc", this::load));
+
+        StepVerifier.create(movies)
+                .expectNextCount(10)
+                .verifyComplete();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidate() {
+        var movieCache = movieCache(true);
+
+        movieCache.get("abc", this::load).block();
+        movieCache.get("abc", this::load).block();
+        assertEquals(1, loads.get());
+
+        movieCache.invalidate("abc");
+        movieCache.get("abc", this::load).block();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidatedByTheChangedMovieInfoIds() {
+        var changedMovieInfoIds = Sinks.many().unicast().<String>onBackpressureBuffer();
+        when(moviesInfoRestClient.retrieveChangedMovieInfoIds()).thenReturn(changedMovieInfoIds.asFlux());
+        var movieCache = movieCache(true);
+        movieCache.subscribeToInvalidations();
+
+        movieCache.get("abc", this::load).block();
+        // the id of a deleted movie info
+        changedMovieInfoIds.tryEmitNext("abc");
+        movieCache.get("abc", this::load).block();
+        movieCache.unsubscribeFromInvalidations();
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_failedLoadIsNotCached() {
+        var movieCache = movieCache(true);
+
+        StepVerifier.create(movieCache.get("abc", movieId -> Mono.error(new RuntimeException("boom"))))
+                .expectErrorMessage("boom")
+                .verify();
+
+        StepVerifier.create(movieCache.get("abc", this::load))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void get_disabled() {
+        var movieCache = movieCache(false);
+
+        movieCache.get("abc", this::load).block();
+        movieCache.get("abc", this::load).block();
+
+        assertEquals(2, loads.get());
+    }
+}
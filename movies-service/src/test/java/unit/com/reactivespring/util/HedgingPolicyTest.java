@@ -0,0 +1,206 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.HedgingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HedgingPolicyTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicInteger calls = new AtomicInteger();
+
+    AtomicInteger cancellations = new AtomicInteger();
+
+    HedgingProperties properties(boolean enabled) {
+        var properties = new HedgingProperties();
+        properties.setEnabled(enabled);
+        properties.setMaxDelay(Duration.ofMillis(100));
+        return properties;
+    }
+
+    /**
+     * The first call is slow, every following call answers quickly.
+     */
+    Mono<String> call() {
+        return Mono.defer(() -> {
+            var attempt = calls.incrementAndGet();
+            var latency = attempt == 1 ? Duration.ofSeconds(5) : Duration.ofMillis(10);
+            return Mono.just("result-" + attempt)
+                    .delayElement(latency)
+                    .doOnCancel(cancellations::incrementAndGet);
+        });
+    }
+
+    @Test
+    void hedge_slowCallIsHedged() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(true), meterRegistry);
+
+        StepVerifier.create(hedgingPolicy.hedge(call()))
+                .expectNext("result-2")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, calls.get());
+        assertEquals(1, cancellations.get());
+        assertEquals(1.0, meterRegistry.counter("restClient.hedge.wins", "client", "test").count());
+    }
+
+    @Test
+    void hedge_fastCallIsNotHedged() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(true), meterRegistry);
+        calls.set(1);
+
+        StepVerifier.create(hedgingPolicy.hedge(call()))
+                .expectNext("result-2")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+        assertEquals(0.0, meterRegistry.counter("restClient.hedge.requests", "client", "test").count());
+    }
+
+    @Test
+    void hedge_callFailingAfterTheHedgeDoesNotWin() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(true), meterRegistry);
+        var call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(200)).then(Mono.<String>error(new IllegalStateException("first")))
+                : Mono.just("result-2").delayElement(Duration.ofMillis(300)));
+
+        StepVerifier.create(hedgingPolicy.hedge(call))
+                .expectNext("result-2")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void hedge_bothCallsFail() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(true), meterRegistry);
+        var call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(200)).then(Mono.<String>error(new IllegalStateException("first")))
+                : Mono.delay(Duration.ofMillis(10)).then(Mono.<String>error(new IllegalStateException("hedge"))));
+
+        StepVerifier.create(hedgingPolicy.hedge(call))
+                .expectErrorMatches(e -> e instanceof IllegalStateException && e.getMessage().equals("first"))
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void hedge_callFailingBeforeTheDelayIsNotHedged() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(true), meterRegistry);
+        var call = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.<String>error(new IllegalStateException("first"));
+        });
+
+        StepVerifier.create(hedgingPolicy.hedge(call))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.counter("restClient.hedge.requests", "client", "test").count());
+    }
+
+    @Test
+    void hedge_emptyAnswerWins() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(true), meterRegistry);
+
+        StepVerifier.create(hedgingPolicy.hedge(Mono.<String>empty()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        assertEquals(0.0, meterRegistry.counter("restClient.hedge.requests", "client", "test").count());
+    }
+
+    @Test
+    void hedge_budgetExhausted() {
+        var properties = properties(true);
+        properties.setBudgetRatio(0);
+        properties.setBudgetMinPerSecond(0);
+        var hedgingPolicy = new HedgingPolicy("test", properties, meterRegistry);
+
+        StepVerifier.create(hedgingPolicy.hedge(call()))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(500))
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.counter("restClient.hedge.budget.exhausted", "client", "test").count());
+    }
+
+    @Test
+    void hedge_disabled() {
+        var hedgingPolicy = new HedgingPolicy("test", properties(false), meterRegistry);
+
+        StepVerifier.create(hedgingPolicy.hedge(call()))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(500))
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void hedgeDelay_percentile() {
+        var properties = properties(true);
+        properties.setMinSamples(10);
+        properties.setMinDelay(Duration.ofMillis(1));
+        properties.setMaxDelay(Duration.ofSeconds(10));
+        var hedgingPolicy = new HedgingPolicy("test", properties, meterRegistry);
+
+        assertEquals(Duration.ofSeconds(10), hedgingPolicy.hedgeDelay());
+
+        calls.set(1);
+        for (int i = 0; i < 10; i++) {
+            hedgingPolicy.hedge(call()).block();
+        }
+
+        assertEquals(10, hedgingPolicy.hedgeDelay().toMillis(), 20);
+    }
+
+    @Test
+    void hedgeDelay_hedgeWinsNotSampled() {
+        var properties = properties(true);
+        properties.setMinSamples(1);
+        properties.setMinDelay(Duration.ofMillis(1));
+        var hedgingPolicy = new HedgingPolicy("test", properties, meterRegistry);
+
+        StepVerifier.create(hedgingPolicy.hedge(call()))
+                .expectNext("result-2")
+                .expectComplete()
+                .verify(Duration.ofSeconds(1));
+
+        // the answer came from the hedge, the delay is still the one without samples
+        assertEquals(Duration.ofMillis(100), hedgingPolicy.hedgeDelay());
+
+        StepVerifier.create(hedgingPolicy.hedge(call()))
+                .expectNext("result-3")
+                .verifyComplete();
+
+        assertEquals(10, hedgingPolicy.hedgeDelay().toMillis(), 20);
+    }
+
+    @Test
+    void latencyTracker_percentile() {
+        var latencyTracker = new LatencyTracker(100);
+        for (int i = 1; i <= 100; i++) {
+            latencyTracker.record(i);
+        }
+
+        assertEquals(95, latencyTracker.percentile(95));
+        assertEquals(100, latencyTracker.percentile(100));
+        assertEquals(1, latencyTracker.percentile(0));
+    }
+}
@@ -0,0 +1,158 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.RetryProperties;
+import com.reactivespring.exception.ReviewsServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicInteger attempts = new AtomicInteger();
+
+    RetryPolicy retryPolicy(RetryProperties properties) {
+        return new RetryPolicy("test", properties,
+                ex -> ex instanceof ReviewsServerException,
+                ex -> ex instanceof ReviewsServerException ? ((ReviewsServerException) ex).getRetryAfter() : null,
+                meterRegistry);
+    }
+
+    Mono<String> failingCall(Duration retryAfter) {
+        return Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new ReviewsServerException("Server exception in the ReviewsService", retryAfter));
+        });
+    }
+
+    RetryProperties fastProperties() {
+        var properties = new RetryProperties();
+        properties.setMinBackoff(Duration.ofMillis(1));
+        properties.setMaxBackoff(Duration.ofMillis(10));
+        return properties;
+    }
+
+    @Test
+    void retry_maxRetries() {
+        StepVerifier.create(failingCall(null).retryWhen(retryPolicy(fastProperties())))
+                .expectError(ReviewsServerException.class)
+                .verify();
+
+        assertEquals(4, attempts.get());
+        assertEquals(3.0, meterRegistry.counter("restClient.retry.attempts", "client", "test").count());
+    }
+
+    @Test
+    void retry_nonRetryableFailure() {
+        var call = Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new IllegalStateException("client error"));
+        });
+
+        StepVerifier.create(call.retryWhen(retryPolicy(fastProperties())))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void retry_budgetExhausted() {
+        var properties = fastProperties();
+        properties.setBudgetRatio(0.0);
+        properties.setBudgetMinPerSecond(0);
+
+        StepVerifier.create(failingCall(null).retryWhen(retryPolicy(properties)))
+                .expectError(ReviewsServerException.class)
+                .verify();
+
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, meterRegistry.counter("restClient.retry.exhausted",
+                "client", "test", "reason", "budget").count());
+    }
+
+    @Test
+    void retry_retryAfterAboveMaximum() {
+        StepVerifier.create(failingCall(Duration.ofMinutes(1)).retryWhen(retryPolicy(fastProperties())))
+                .expectError(ReviewsServerException.class)
+                .verify();
+
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, meterRegistry.counter("restClient.retry.exhausted",
+                "client", "test", "reason", "retryAfter").count());
+    }
+
+    @Test
+    void retry_retryAfterHonored() {
+        var properties = fastProperties();
+        properties.setMaxRetries(1);
+        var start = System.nanoTime();
+
+        StepVerifier.create(failingCall(Duration.ofSeconds(1)).retryWhen(retryPolicy(properties)))
+                .expectError(ReviewsServerException.class)
+                .verify();
+
+        assertEquals(2, attempts.get());
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) >= 0);
+    }
+
+    @Test
+    void retry_deadlineFromContext() {
+        var call = failingCall(null)
+                .retryWhen(retryPolicy(fastProperties()))
+                .contextWrite(context -> context.put(RetryPolicy.DEADLINE_KEY, Instant.now()));
+
+        StepVerifier.create(call)
+                .expectError(ReviewsServerException.class)
+                .verify();
+
+        assertEquals(1, attempts.get());
+        assertEquals(1.0, meterRegistry.counter("restClient.retry.exhausted",
+                "client", "test", "reason", "deadline").count());
+    }
+
+    @Test
+    void backoff_fullJitter() {
+        var properties = new RetryProperties();
+        properties.setMinBackoff(Duration.ofMillis(100));
+        properties.setMaxBackoff(Duration.ofSeconds(2));
+        var retryPolicy = retryPolicy(properties);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(retryPolicy.backoff(0).toMillis() <= 100);
+            assertTrue(retryPolicy.backoff(3).toMillis() <= 800);
+            assertTrue(retryPolicy.backoff(40).toMillis() <= 2000);
+        }
+    }
+
+    @Test
+    void parseRetryAfter() {
+        assertEquals(Duration.ofSeconds(2), RetryPolicy.parseRetryAfter("2"));
+        assertEquals(Duration.ZERO, RetryPolicy.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertNull(RetryPolicy.parseRetryAfter("soon"));
+        assertNull(RetryPolicy.parseRetryAfter(null));
+    }
+
+    @Test
+    void requestBudget() {
+        var budget = new RequestBudget(0.5, 0, Duration.ofSeconds(10));
+        for (int i = 0; i < 4; i++) {
+            budget.recordRequest();
+        }
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+    }
+}
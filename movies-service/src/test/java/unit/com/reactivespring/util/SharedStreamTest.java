@@ -0,0 +1,97 @@
+package com.reactivespring.util;
+
+import com.reactivespring.config.StreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SharedStreamTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AtomicInteger upstreamSubscriptions = new AtomicInteger();
+
+    StreamProperties properties() {
+        var properties = new StreamProperties();
+        properties.setGracePeriod(Duration.ofMillis(200));
+        properties.setSubscriberBufferSize(10);
+        properties.setMinBackoff(Duration.ofMillis(10));
+        properties.setMaxBackoff(Duration.ofMillis(50));
+        return properties;
+    }
+
+    SharedStream<Long> sharedStream(Flux<Long> source) {
+        return new SharedStream<>("test",
+                source.doOnSubscribe(subscription -> upstreamSubscriptions.incrementAndGet()),
+                properties(), meterRegistry);
+    }
+
+    @Test
+    void stream_subscribersShareOneUpstream() {
+        var sharedStream = sharedStream(Flux.interval(Duration.ofMillis(10)));
+
+        Flux.merge(sharedStream.stream().take(5), sharedStream.stream().take(5), sharedStream.stream().take(5))
+                .blockLast(Duration.ofSeconds(5));
+
+        assertEquals(1, upstreamSubscriptions.get());
+        assertEquals(0, sharedStream.subscriberCount());
+    }
+
+    @Test
+    void stream_gracePeriod() throws InterruptedException {
+        var sharedStream = sharedStream(Flux.interval(Duration.ofMillis(10)));
+
+        sharedStream.stream().take(1).blockLast(Duration.ofSeconds(5));
+        // within the grace period, the upstream is still connected
+        sharedStream.stream().take(1).blockLast(Duration.ofSeconds(5));
+        assertEquals(1, upstreamSubscriptions.get());
+
+        Thread.sleep(500);
+        sharedStream.stream().take(1).blockLast(Duration.ofSeconds(5));
+        assertEquals(2, upstreamSubscriptions.get());
+    }
+
+    @Test
+    void stream_reconnectsAfterErrorAndCompletion() {
+        var attempts = new AtomicInteger();
+        var sharedStream = sharedStream(Flux.defer(() -> {
+            var attempt = attempts.incrementAndGet();
+            if (attempt == 1) {
+                return Flux.just(1L).concatWith(Flux.error(new RuntimeException("connection reset")));
+            }
+            if (attempt == 2) {
+                return Flux.just(2L);
+            }
+            return Flux.just(3L).concatWith(Flux.never());
+        }));
+
+        StepVerifier.create(sharedStream.stream())
+                .expectNext(1L, 2L, 3L)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(3, upstreamSubscriptions.get());
+        assertEquals(3.0, meterRegistry.counter("restClient.stream.connections", "client", "test").count());
+    }
+
+    @Test
+    void stream_slowSubscriberDropsOldest() {
+        var sharedStream = sharedStream(Flux.range(1, 100).map(Long::valueOf).concatWith(Flux.never()));
+
+        StepVerifier.create(sharedStream.stream(), 0)
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(100))
+                .thenRequest(10)
+                .expectNext(91L, 92L, 93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(90.0, meterRegistry.counter("restClient.stream.dropped", "client", "test").count());
+    }
+}
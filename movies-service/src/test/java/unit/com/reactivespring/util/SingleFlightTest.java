@@ -0,0 +1,122 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    SingleFlight<String, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+
+    AtomicInteger calls = new AtomicInteger();
+
+    Mono<String> call() {
+        return Mono.fromSupplier(() -> "result-" + calls.incrementAndGet())
+                .delayElement(Duration.ofMillis(200));
+    }
+
+    @Test
+    void execute_concurrentCallersShareOneCall() {
+        var results = Flux.range(0, 50)
+                .flatMap(i -> singleFlight.execute("abc", this::call));
+
+        StepVerifier.create(results)
+                .expectNextCount(50)
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+        assertEquals(1.0, meterRegistry.counter("restClient.singleflight.calls",
+                "client", "test", "role", "leader").count());
+        assertEquals(49.0, meterRegistry.counter("restClient.singleflight.calls",
+                "client", "test", "role", "coalesced").count());
+    }
+
+    @Test
+    void execute_entryDroppedOnCompletion() {
+        StepVerifier.create(singleFlight.execute("abc", this::call))
+                .expectNext("result-1")
+                .verifyComplete();
+
+        StepVerifier.create(singleFlight.execute("abc", this::call))
+                .expectNext("result-2")
+                .verifyComplete();
+    }
+
+    @Test
+    void execute_differentKeys() {
+        var results = Flux.just("abc", "def")
+                .flatMap(key -> singleFlight.execute(key, this::call));
+
+        StepVerifier.create(results)
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void execute_errorIsShared() {
+        var results = Flux.range(0, 5)
+                .flatMapDelayError(i -> singleFlight.execute("abc", () -> {
+                    calls.incrementAndGet();
+                    return Mono.<String>error(new RuntimeException("boom"))
+                            .delaySubscription(Duration.ofMillis(100));
+                }), 5, 1);
+
+        StepVerifier.create(results)
+                .verifyError();
+
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void execute_callerJoiningAsTheCallTerminates() {
+        var lateResult = new AtomicReference<String>();
+        Supplier<Mono<String>> call = () -> Mono.fromSupplier(() -> "result-" + calls.incrementAndGet());
+
+        // joins while the result is being delivered, before the entry is dropped
+        var result = singleFlight.execute("abc", call)
+                .doOnNext(value -> singleFlight.execute("abc", call).subscribe(lateResult::set))
+                .block();
+
+        assertEquals("result-1", result);
+        assertEquals("result-1", lateResult.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void execute_cancelledOnceEveryCallerCancelled() {
+        var cancelled = new AtomicBoolean();
+        Supplier<Mono<String>> call = () -> Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+
+        var first = singleFlight.execute("abc", call).subscribe();
+        var second = singleFlight.execute("abc", call).subscribe();
+        first.dispose();
+        assertFalse(cancelled.get());
+
+        second.dispose();
+        assertTrue(cancelled.get());
+        assertEquals(0, singleFlight.inFlightCount());
+
+        StepVerifier.create(singleFlight.execute("abc", this::call))
+                .expectNext("result-1")
+                .verifyComplete();
+    }
+}